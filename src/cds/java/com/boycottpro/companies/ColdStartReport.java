@@ -0,0 +1,44 @@
+package com.boycottpro.companies;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Prints the cold-start improvement of the AppCDS archive, from the report
+ * lines {@link ColdStartTrainingRun} wrote for a run without the archive
+ * (first argument) and one with it (second argument).
+ */
+public final class ColdStartReport {
+
+    private static final String FIELD = "jvm-start-to-first-response-ms=";
+
+    private ColdStartReport() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            throw new IllegalArgumentException("usage: ColdStartReport <without-cds report> <with-cds report>");
+        }
+        long without = firstResponseMillis(Path.of(args[0]));
+        long with = firstResponseMillis(Path.of(args[1]));
+        long saved = without - with;
+        System.out.printf("cold start: without CDS %d ms, with CDS %d ms, improvement %d ms (%.1f%%)%n",
+                without, with, saved, without == 0 ? 0.0 : saved * 100.0 / without);
+    }
+
+    static long firstResponseMillis(Path report) throws IOException {
+        String line = Files.readString(report, StandardCharsets.UTF_8).trim();
+        int start = line.indexOf(FIELD);
+        if (start < 0) {
+            throw new IllegalStateException("no " + FIELD + " in " + report + ": " + line);
+        }
+        start += FIELD.length();
+        int end = start;
+        while (end < line.length() && Character.isDigit(line.charAt(end))) {
+            end++;
+        }
+        return Long.parseLong(line.substring(start, end));
+    }
+}
@@ -0,0 +1,121 @@
+package com.boycottpro.companies;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Map;
+
+/**
+ * Training run for the AppCDS archive built by the release profile, and the
+ * cold-start probe it reports with. It lives in src/cds so it never ships in
+ * the Lambda jar. handleRequest is driven through the success, 400, 401 and
+ * 404 paths with the production DynamoDB client pointed at a local endpoint
+ * that answers like DynamoDB, so the SDK's HTTP client, signer, credential
+ * and marshalling classes are loaded and archived. TLS is not used locally,
+ * so a client handshake is started on an SSLEngine to load those classes too.
+ *
+ * The report line (time from JVM start to the first response) goes to the
+ * file named by the first argument, or stdout when there is none;
+ * {@link ColdStartReport} compares the runs with and without the archive.
+ */
+public final class ColdStartTrainingRun {
+
+    private static final String CONDITION_FAILED = "{\"__type\":\"com.amazonaws.dynamodb.v20120810"
+            + "#ConditionalCheckFailedException\",\"message\":\"The conditional request failed\"}";
+    private static final String UPDATED = "{\"Attributes\":{\"boycott_count\":{\"N\":\"1\"}}}";
+
+    private ColdStartTrainingRun() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        HttpServer endpoint = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        endpoint.createContext("/", ColdStartTrainingRun::answer);
+        endpoint.start();
+        // the default provider chains read these first, so no real account is involved
+        System.setProperty("aws.region", "us-east-1");
+        System.setProperty("aws.accessKeyId", "training");
+        System.setProperty("aws.secretAccessKey", "training");
+        APIGatewayProxyResponseEvent first;
+        long firstResponseMillis;
+        try (DynamoDbClient dynamoDb = DynamoDbClients.syncClientBuilder()
+                .endpointOverride(URI.create("http://127.0.0.1:" + endpoint.getAddress().getPort()))
+                .build()) {
+            IncrementCompanyBoycottHandler handler = new IncrementCompanyBoycottHandler(dynamoDb);
+            handler.setMetricsOutput(null);
+            first = handler.handleRequest(event("test-company", "true", true), null);
+            firstResponseMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+            handler.handleRequest(event("test-company", "maybe", true), null);
+            handler.handleRequest(event("test-company", "true", false), null);
+            handler.handleRequest(event("missing-company", "false", true), null);
+            IncrementCompanyBoycottStreamHandler streamHandler = new IncrementCompanyBoycottStreamHandler(handler);
+            streamHandler.handleRequest(new ByteArrayInputStream(("{\"pathParameters\":{\"company_id\":"
+                    + "\"test-company\",\"increment\":\"true\"},\"requestContext\":{\"authorizer\":{\"claims\":"
+                    + "{\"sub\":\"training\"}}}}").getBytes(StandardCharsets.UTF_8)),
+                    new ByteArrayOutputStream(), null);
+            startTlsHandshake();
+        } finally {
+            endpoint.stop(0);
+        }
+        try (PrintStream out = args.length > 0 ? new PrintStream(new FileOutputStream(args[0]), true,
+                StandardCharsets.UTF_8) : null) {
+            (out == null ? System.out : out).println("cold start: status=" + first.getStatusCode()
+                    + " jvm-start-to-first-response-ms=" + firstResponseMillis);
+        }
+    }
+
+    /** Answers UpdateItem like DynamoDB: missing-company fails its condition, anything else succeeds. */
+    private static void answer(HttpExchange exchange) throws IOException {
+        String body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        boolean missing = body.contains("\"missing-company\"");
+        byte[] response = (missing ? CONDITION_FAILED : UPDATED).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/x-amz-json-1.0");
+        exchange.sendResponseHeaders(missing ? 400 : 200, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response);
+        }
+    }
+
+    private static void startTlsHandshake() {
+        try {
+            SSLEngine engine = SSLContext.getDefault().createSSLEngine("dynamodb.us-east-1.amazonaws.com", 443);
+            engine.setUseClientMode(true);
+            engine.beginHandshake();
+            engine.wrap(ByteBuffer.allocate(0), ByteBuffer.allocate(engine.getSession().getPacketBufferSize()));
+        } catch (GeneralSecurityException | IOException e) {
+            throw new IllegalStateException("TLS training failed", e);
+        }
+    }
+
+    private static APIGatewayProxyRequestEvent event(String companyId, String increment, boolean authorized) {
+        APIGatewayProxyRequestEvent event = new APIGatewayProxyRequestEvent();
+        if (authorized) {
+            APIGatewayProxyRequestEvent.ProxyRequestContext rc = new APIGatewayProxyRequestEvent.ProxyRequestContext();
+            rc.setAuthorizer(Map.of("claims", Map.of("sub", "11111111-2222-3333-4444-555555555555")));
+            event.setRequestContext(rc);
+        }
+        event.setPathParameters(Map.of("company_id", companyId, "increment", increment));
+        return event;
+    }
+}
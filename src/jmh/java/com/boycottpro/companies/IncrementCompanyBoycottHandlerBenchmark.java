@@ -0,0 +1,97 @@
+package com.boycottpro.companies;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures handleRequest against {@link StubDynamoDbClient} for the success,
+ * 400, 401 and ConditionalCheckFailed paths, and for a 404 answered from the
+ * unknown-company cache. Run with
+ * mvn -Pdev,benchmark test-compile exec:exec, which adds the gc profiler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IncrementCompanyBoycottHandlerBenchmark {
+
+    private IncrementCompanyBoycottHandler handler;
+    // the unknown-company cache would answer every repeat 404 without calling DynamoDB
+    private IncrementCompanyBoycottHandler uncachedHandler;
+    private APIGatewayProxyRequestEvent success;
+    private APIGatewayProxyRequestEvent badRequest;
+    private APIGatewayProxyRequestEvent unauthorized;
+    private APIGatewayProxyRequestEvent companyNotFound;
+
+    @Setup
+    public void setUp() {
+        handler = new IncrementCompanyBoycottHandler(new StubDynamoDbClient());
+        handler.setToggleRateLimiter(null);
+        handler.setMetricsOutput(null);
+        uncachedHandler = new IncrementCompanyBoycottHandler(new StubDynamoDbClient());
+        uncachedHandler.setToggleRateLimiter(null);
+        uncachedHandler.setMetricsOutput(null);
+        uncachedHandler.setUnknownCompanyCache(new UnknownCompanyCache(0, 0));
+        success = event("test-company", "true");
+        badRequest = event("test-company", "maybe");
+        companyNotFound = event(StubDynamoDbClient.MISSING_COMPANY_ID, "true");
+        unauthorized = new APIGatewayProxyRequestEvent();
+        unauthorized.setPathParameters(Map.of("company_id", "test-company", "increment", "true"));
+    }
+
+    private static APIGatewayProxyRequestEvent event(String companyId, String increment) {
+        APIGatewayProxyRequestEvent event = new APIGatewayProxyRequestEvent();
+        Map<String, Object> authorizer = new HashMap<>();
+        authorizer.put("claims", Map.of("sub", "11111111-2222-3333-4444-555555555555"));
+        APIGatewayProxyRequestEvent.ProxyRequestContext rc = new APIGatewayProxyRequestEvent.ProxyRequestContext();
+        rc.setAuthorizer(authorizer);
+        event.setRequestContext(rc);
+        event.setHeaders(Map.of("Content-Type", "application/json", "User-Agent", "Mozilla/5.0"));
+        Map<String, String> pathParams = new HashMap<>();
+        pathParams.put("company_id", companyId);
+        pathParams.put("increment", increment);
+        event.setPathParameters(pathParams);
+        return event;
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent successfulIncrement() {
+        return handler.handleRequest(success, null);
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent badRequest() {
+        return handler.handleRequest(badRequest, null);
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent unauthorized() {
+        return handler.handleRequest(unauthorized, null);
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent conditionalCheckFailed() {
+        return uncachedHandler.handleRequest(companyNotFound, null);
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent cachedUnknownCompany() {
+        return handler.handleRequest(companyNotFound, null);
+    }
+}
@@ -0,0 +1,33 @@
+package com.boycottpro.companies;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+
+/**
+ * In-process DynamoDbClient for benchmarks: updates succeed without I/O, except
+ * for {@link #MISSING_COMPANY_ID}, which fails the attribute_exists condition.
+ */
+public class StubDynamoDbClient implements DynamoDbClient {
+
+    public static final String MISSING_COMPANY_ID = "missing-company";
+    private static final UpdateItemResponse RESPONSE = UpdateItemResponse.builder().build();
+
+    @Override
+    public UpdateItemResponse updateItem(UpdateItemRequest updateItemRequest) {
+        if (MISSING_COMPANY_ID.equals(updateItemRequest.key().get("company_id").s())) {
+            throw ConditionalCheckFailedException.builder().message("The conditional request failed").build();
+        }
+        return RESPONSE;
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,400 @@
+package com.boycottpro.companies;
+
+import com.boycottpro.utilities.Logger;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValuesOnConditionCheckFailure;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.Update;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Applies boycott_count deltas to the companies table. Companies listed in
+ * {@link CompanyShardConfig} are written to one of N shard items in the shard
+ * table instead, and are summed back on read or rolled up into boycott_count.
+ */
+public class BoycottCountUpdater {
+
+    public static final String TABLE_NAME = "companies";
+    public static final String DEFAULT_SHARD_TABLE = "company_boycott_shards";
+    static final String UPDATE_EXPRESSION = "SET boycott_count = if_not_exists(boycott_count, :zero) + :delta";
+    static final String EXISTS_CONDITION = "attribute_exists(company_id)";
+    private static final AttributeValue ZERO = AttributeValue.fromN("0");
+    private static final Map<String, AttributeValue> INCREMENT_VALUES = Map.of(
+            ":delta", AttributeValue.fromN("1"), ":zero", ZERO);
+    private static final Map<String, AttributeValue> DECREMENT_VALUES = Map.of(
+            ":delta", AttributeValue.fromN("-1"), ":zero", ZERO);
+
+    private final DynamoDbClient dynamoDb;
+    private final DynamoDbAsyncClient asyncDynamoDb;
+    private final CompanyShardConfig shardConfig;
+    private final String shardTable;
+    private TimeBuckets timeBuckets = TimeBuckets.fromEnv();
+
+    public BoycottCountUpdater(DynamoDbClient dynamoDb) {
+        this(dynamoDb, CompanyShardConfig.fromEnv(), shardTableFromEnv());
+    }
+
+    public BoycottCountUpdater(DynamoDbClient dynamoDb, DynamoDbAsyncClient asyncDynamoDb) {
+        this(dynamoDb, asyncDynamoDb, CompanyShardConfig.fromEnv(), shardTableFromEnv());
+    }
+
+    public BoycottCountUpdater(DynamoDbClient dynamoDb, CompanyShardConfig shardConfig, String shardTable) {
+        this(dynamoDb, null, shardConfig, shardTable);
+    }
+
+    public BoycottCountUpdater(DynamoDbClient dynamoDb, DynamoDbAsyncClient asyncDynamoDb,
+                               CompanyShardConfig shardConfig, String shardTable) {
+        this.dynamoDb = dynamoDb;
+        this.asyncDynamoDb = asyncDynamoDb;
+        this.shardConfig = shardConfig;
+        this.shardTable = shardTable;
+    }
+
+    public CompanyShardConfig getShardConfig() {
+        return shardConfig;
+    }
+
+    void setTimeBuckets(TimeBuckets timeBuckets) {
+        this.timeBuckets = timeBuckets;
+    }
+
+    public UpdateItemResponse applyDelta(String companyId, int delta) {
+        return update(buildUpdate(companyId, delta, true));
+    }
+
+    private UpdateItemResponse update(UpdateItemRequest request) {
+        try {
+            return dynamoDb.updateItem(request);
+        } catch (DynamoDbException e) {
+            if (timeBuckets == null || !TimeBuckets.isMissingMap(e)) {
+                throw e;
+            }
+            dynamoDb.updateItem(TimeBuckets.initializeMaps(request));
+            return dynamoDb.updateItem(request);
+        }
+    }
+
+    /**
+     * Applies the delta only if boycott_count currently equals expectedCount.
+     * A failed check carries the old item, so callers can tell a stale count
+     * from a missing company. Not supported for sharded companies.
+     */
+    public UpdateItemResponse applyDelta(String companyId, int delta, long expectedCount) {
+        if (shardConfig.isSharded(companyId)) {
+            throw new IllegalArgumentException("expected count not supported for sharded company");
+        }
+        UpdateItemRequest request = buildUpdate(companyId, delta, true);
+        return update(request.toBuilder()
+                .expressionAttributeValues(withExpected(request.expressionAttributeValues(), expectedCount))
+                .conditionExpression(expectedCondition(expectedCount))
+                .returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD)
+                .build());
+    }
+
+    private static Map<String, AttributeValue> withExpected(Map<String, AttributeValue> values, long expectedCount) {
+        Map<String, AttributeValue> withExpected = new HashMap<>(values);
+        withExpected.put(":expected", AttributeValue.fromN(Long.toString(expectedCount)));
+        return withExpected;
+    }
+
+    private static String expectedCondition(long expectedCount) {
+        String countCondition = expectedCount == 0
+                ? "(boycott_count = :expected OR attribute_not_exists(boycott_count))"
+                : "boycott_count = :expected";
+        return EXISTS_CONDITION + " AND " + countCondition;
+    }
+
+    public boolean supportsAsync() {
+        return asyncDynamoDb != null;
+    }
+
+    public CompletableFuture<UpdateItemResponse> applyDeltaAsync(String companyId, int delta) {
+        if (asyncDynamoDb == null) {
+            throw new IllegalStateException("no async DynamoDB client configured");
+        }
+        UpdateItemRequest request = buildUpdate(companyId, delta, true);
+        return asyncDynamoDb.updateItem(request).exceptionallyCompose(error -> {
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (timeBuckets == null || !(cause instanceof DynamoDbException)
+                    || !TimeBuckets.isMissingMap((DynamoDbException) cause)) {
+                return CompletableFuture.failedFuture(cause);
+            }
+            return asyncDynamoDb.updateItem(TimeBuckets.initializeMaps(request))
+                    .thenCompose(ignored -> asyncDynamoDb.updateItem(request));
+        });
+    }
+
+    private UpdateItemRequest buildUpdate(String companyId, int delta, boolean withBuckets) {
+        Map<String, AttributeValue> values = expressionValues(delta);
+        TimeBuckets buckets = withBuckets ? timeBuckets : null;
+        String expression = buckets == null ? UPDATE_EXPRESSION : UPDATE_EXPRESSION + TimeBuckets.UPDATE_CLAUSES;
+        int shards = shardConfig.shardCount(companyId);
+        UpdateItemRequest.Builder request;
+        if (shards > 1) {
+            int shard = ThreadLocalRandom.current().nextInt(shards);
+            request = UpdateItemRequest.builder()
+                    .tableName(shardTable)
+                    .key(Map.of("company_id", AttributeValue.fromS(CompanyShardConfig.shardKey(companyId, shard))))
+                    .updateExpression(expression)
+                    .expressionAttributeValues(values)
+                    .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+        } else {
+            request = UpdateItemRequest.builder()
+                    .tableName(TABLE_NAME)
+                    .key(Map.of("company_id", AttributeValue.fromS(companyId)))
+                    .updateExpression(expression)
+                    .expressionAttributeValues(values)
+                    .conditionExpression(EXISTS_CONDITION)
+                    .returnValues(ReturnValue.UPDATED_NEW)
+                    .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+        }
+        if (buckets != null) {
+            request.expressionAttributeNames(buckets.attributeNames());
+        }
+        return request.build();
+    }
+
+    /**
+     * Hourly deltas used by trending queries, summed over the company item and
+     * its shard items. Keys past the retention cutoff are left out and pruned.
+     */
+    public Map<String, Long> readHourlyDeltas(String companyId) {
+        Map<String, Long> deltas = new HashMap<>();
+        boolean expired = false;
+        for (Map<String, AttributeValue> item : readBucketItems(companyId).values()) {
+            if (!item.containsKey("boycott_hourly")) {
+                continue;
+            }
+            for (Map.Entry<String, AttributeValue> hour : item.get("boycott_hourly").m().entrySet()) {
+                if (timeBuckets != null && timeBuckets.isExpiredHour(hour.getKey())) {
+                    expired = true;
+                    continue;
+                }
+                deltas.merge(hour.getKey(), Long.parseLong(hour.getValue().n()), Long::sum);
+            }
+        }
+        if (expired) {
+            pruneExpiredBuckets(companyId);
+        }
+        return deltas;
+    }
+
+    /**
+     * Removes every hourly and daily key past the retention cutoff from the
+     * company item and its shard items. Returns the number of keys removed.
+     */
+    public int pruneExpiredBuckets(String companyId) {
+        if (timeBuckets == null) {
+            return 0;
+        }
+        int pruned = 0;
+        for (Map.Entry<Map<String, AttributeValue>, Map<String, AttributeValue>> entry
+                : readBucketItems(companyId).entrySet()) {
+            List<String[]> paths = timeBuckets.expiredPaths(entry.getValue());
+            String table = entry.getKey().get("company_id").s().equals(companyId) ? TABLE_NAME : shardTable;
+            while (!paths.isEmpty()) {
+                try {
+                    dynamoDb.updateItem(TimeBuckets.prune(table, entry.getKey(), paths));
+                } catch (DynamoDbException e) {
+                    Logger.error(205, companyId, "pruning time buckets failed: " + e.getMessage());
+                    break;
+                }
+                int removed = Math.min(paths.size(), TimeBuckets.MAX_PRUNED_KEYS);
+                pruned += removed;
+                paths = paths.subList(removed, paths.size());
+            }
+        }
+        return pruned;
+    }
+
+    /** Bucket maps of the company item and its shard items, by item key. */
+    private Map<Map<String, AttributeValue>, Map<String, AttributeValue>> readBucketItems(String companyId) {
+        Map<Map<String, AttributeValue>, Map<String, AttributeValue>> items = new HashMap<>();
+        Map<String, AttributeValue> key = Map.of("company_id", AttributeValue.fromS(companyId));
+        Map<String, AttributeValue> item = dynamoDb.getItem(GetItemRequest.builder()
+                .tableName(TABLE_NAME)
+                .key(key)
+                .projectionExpression("boycott_hourly, boycott_daily")
+                .build()).item();
+        if (item != null && !item.isEmpty()) {
+            items.put(key, item);
+        }
+        for (Map<String, AttributeValue> shard : readShardItems(companyId,
+                "company_id, boycott_hourly, boycott_daily")) {
+            items.put(Map.of("company_id", shard.get("company_id")), shard);
+        }
+        return items;
+    }
+
+    static Map<String, AttributeValue> expressionValues(int delta) {
+        if (delta == 1) {
+            return INCREMENT_VALUES;
+        }
+        if (delta == -1) {
+            return DECREMENT_VALUES;
+        }
+        return Map.of(":delta", AttributeValue.fromN(Integer.toString(delta)), ":zero", ZERO);
+    }
+
+    /**
+     * Transactional updates skip the time buckets: a missing bucket map would
+     * cancel the whole transaction and it cannot be retried per item.
+     */
+    Update buildTransactUpdate(String companyId, int delta) {
+        return buildTransactUpdate(companyId, delta, null);
+    }
+
+    /**
+     * With an expected count the update is conditional on it, as in
+     * {@link #applyDelta(String, int, long)}, and a failed check carries the
+     * old item in the cancellation reason.
+     */
+    Update buildTransactUpdate(String companyId, int delta, Long expectedCount) {
+        if (expectedCount != null && shardConfig.isSharded(companyId)) {
+            throw new IllegalArgumentException("expected count not supported for sharded company");
+        }
+        UpdateItemRequest request = buildUpdate(companyId, delta, false);
+        Update.Builder update = Update.builder()
+                .tableName(request.tableName())
+                .key(request.key())
+                .updateExpression(request.updateExpression())
+                .conditionExpression(request.conditionExpression())
+                .expressionAttributeValues(request.expressionAttributeValues());
+        if (expectedCount != null) {
+            update.expressionAttributeValues(withExpected(request.expressionAttributeValues(), expectedCount))
+                    .conditionExpression(expectedCondition(expectedCount))
+                    .returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD);
+        }
+        if (request.hasExpressionAttributeNames()) {
+            update.expressionAttributeNames(request.expressionAttributeNames());
+        }
+        return update.build();
+    }
+
+    public long readCount(String companyId) {
+        Map<String, AttributeValue> item = dynamoDb.getItem(GetItemRequest.builder()
+                .tableName(TABLE_NAME)
+                .key(Map.of("company_id", AttributeValue.fromS(companyId)))
+                .projectionExpression("boycott_count")
+                .build()).item();
+        long total = countOf(item);
+        for (long shardCount : readShardCounts(companyId).values()) {
+            total += shardCount;
+        }
+        return total;
+    }
+
+    /**
+     * Moves the current shard totals into companies.boycott_count in a single
+     * transaction. Increments that land on a shard after it was read stay on
+     * the shard and are picked up by the next rollup.
+     */
+    public long rollup(String companyId) {
+        Map<String, Long> shardCounts = readShardCounts(companyId);
+        long moved = 0;
+        List<TransactWriteItem> writes = new ArrayList<>();
+        for (Map.Entry<String, Long> shard : shardCounts.entrySet()) {
+            long value = shard.getValue();
+            if (value == 0) {
+                continue;
+            }
+            moved += value;
+            writes.add(TransactWriteItem.builder().update(Update.builder()
+                    .tableName(shardTable)
+                    .key(Map.of("company_id", AttributeValue.fromS(shard.getKey())))
+                    .updateExpression("SET boycott_count = boycott_count - :moved")
+                    .conditionExpression(EXISTS_CONDITION)
+                    .expressionAttributeValues(Map.of(":moved", AttributeValue.fromN(Long.toString(value))))
+                    .build()).build());
+        }
+        if (writes.isEmpty()) {
+            return 0;
+        }
+        writes.add(0, TransactWriteItem.builder().update(Update.builder()
+                .tableName(TABLE_NAME)
+                .key(Map.of("company_id", AttributeValue.fromS(companyId)))
+                .updateExpression(UPDATE_EXPRESSION)
+                .conditionExpression(EXISTS_CONDITION)
+                .expressionAttributeValues(Map.of(
+                        ":delta", AttributeValue.fromN(Long.toString(moved)),
+                        ":zero", ZERO))
+                .build()).build());
+        dynamoDb.transactWriteItems(TransactWriteItemsRequest.builder().transactItems(writes).build());
+        return moved;
+    }
+
+    private Map<String, Long> readShardCounts(String companyId) {
+        Map<String, Long> counts = new HashMap<>();
+        for (Map<String, AttributeValue> item : readShardItems(companyId, "company_id, boycott_count")) {
+            counts.put(item.get("company_id").s(), countOf(item));
+        }
+        return counts;
+    }
+
+    private List<Map<String, AttributeValue>> readShardItems(String companyId, String projection) {
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
+        int shards = shardConfig.shardCount(companyId);
+        if (shards <= 1) {
+            return items;
+        }
+        List<Map<String, AttributeValue>> keys = new ArrayList<>();
+        for (int i = 0; i < shards; i++) {
+            keys.add(Map.of("company_id", AttributeValue.fromS(CompanyShardConfig.shardKey(companyId, i))));
+        }
+        Map<String, KeysAndAttributes> request = Map.of(shardTable, KeysAndAttributes.builder()
+                .keys(keys)
+                .projectionExpression(projection)
+                .consistentRead(true)
+                .build());
+        while (request != null && !request.isEmpty()) {
+            BatchGetItemResponse response = dynamoDb.batchGetItem(BatchGetItemRequest.builder()
+                    .requestItems(request)
+                    .build());
+            items.addAll(response.responses().getOrDefault(shardTable, List.of()));
+            request = response.unprocessedKeys();
+        }
+        return items;
+    }
+
+    /**
+     * Post-update boycott_count from an UPDATED_NEW response, or null when the
+     * write went to a shard item and the company total is not known.
+     */
+    static Long updatedCount(UpdateItemResponse response) {
+        if (response == null || !response.hasAttributes() || !response.attributes().containsKey("boycott_count")) {
+            return null;
+        }
+        return Long.parseLong(response.attributes().get("boycott_count").n());
+    }
+
+    static long countOf(Map<String, AttributeValue> item) {
+        if (item == null || !item.containsKey("boycott_count")) {
+            return 0;
+        }
+        return Long.parseLong(item.get("boycott_count").n());
+    }
+
+    private static String shardTableFromEnv() {
+        String table = System.getenv("COMPANY_SHARDS_TABLE");
+        return table == null || table.isBlank() ? DEFAULT_SHARD_TABLE : table;
+    }
+}
@@ -0,0 +1,196 @@
+package com.boycottpro.companies;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.CancellationReason;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
+import software.amazon.awssdk.services.dynamodb.model.Update;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Applies a boycott to companies.boycott_count and to the related counters
+ * listed in BOYCOTT_FANOUT_TARGETS as one TransactWriteItems call, so the
+ * counters never disagree after a partial failure. Targets are configured as
+ * a JSON array, for example
+ * [{"name": "cause", "table": "causes", "key": "cause_id", "source": "cause_id", "counter": "boycott_count"},
+ *  {"name": "user", "table": "users", "key": "user_id", "source": "sub", "counter": "boycott_count"}]
+ * where source names the request value used as the key: "sub" for the
+ * caller, otherwise a path or query string parameter. Every target item
+ * must already exist.
+ */
+public class BoycottFanOut {
+
+    public static final String COMPANY_TARGET = "company";
+    // one transaction item is the company
+    static final int MAX_TARGETS = 99;
+    private static final String CONDITION_FAILED = "ConditionalCheckFailed";
+    // cancellation reasons that go away when the same transaction is retried later
+    private static final Set<String> RETRYABLE = Set.of(
+            "ThrottlingError", "TransactionConflict", "ProvisionedThroughputExceeded", "RequestLimitExceeded");
+
+    private final DynamoDbClient dynamoDb;
+    private final BoycottCountUpdater countUpdater;
+    private final List<Target> targets;
+
+    public record Target(String name, String table, String key, String source, String counter) {
+    }
+
+    /** One cancelled transaction item; item is the old company item when If-Match failed. */
+    public record Failure(@JsonProperty("target") String target,
+                          @JsonProperty("table") String table,
+                          @JsonProperty("reason") String reason,
+                          @JsonIgnore Map<String, AttributeValue> item) {
+
+        public boolean conditionFailed() {
+            return CONDITION_FAILED.equals(reason);
+        }
+
+        public boolean retryable() {
+            return RETRYABLE.contains(reason);
+        }
+    }
+
+    /** The transaction was cancelled; failures name the items that caused it. */
+    public static class FanOutCancelledException extends RuntimeException {
+        private final List<Failure> failures;
+
+        FanOutCancelledException(List<Failure> failures, Throwable cause) {
+            super("fan-out cancelled", cause);
+            this.failures = failures;
+        }
+
+        public List<Failure> getFailures() {
+            return failures;
+        }
+
+        public Failure failure(String target) {
+            for (Failure failure : failures) {
+                if (failure.target().equals(target)) {
+                    return failure;
+                }
+            }
+            return null;
+        }
+
+        public boolean conditionFailed() {
+            return failures.stream().anyMatch(Failure::conditionFailed);
+        }
+
+        /**
+         * True when no item failed its condition and the cancellation was
+         * throttling or a conflicting transaction, so a later retry can succeed.
+         */
+        public boolean retryable() {
+            return !conditionFailed() && failures.stream().anyMatch(Failure::retryable);
+        }
+    }
+
+    public BoycottFanOut(DynamoDbClient dynamoDb, BoycottCountUpdater countUpdater, List<Target> targets) {
+        this.dynamoDb = dynamoDb;
+        this.countUpdater = countUpdater;
+        this.targets = List.copyOf(targets);
+    }
+
+    public static BoycottFanOut fromEnv(DynamoDbClient dynamoDb, BoycottCountUpdater countUpdater,
+                                        ObjectMapper objectMapper) {
+        return new BoycottFanOut(dynamoDb, countUpdater,
+                parseTargets(System.getenv("BOYCOTT_FANOUT_TARGETS"), objectMapper));
+    }
+
+    public static List<Target> parseTargets(String json, ObjectMapper objectMapper) {
+        List<Target> targets = new ArrayList<>();
+        if (json == null || json.isBlank()) {
+            return targets;
+        }
+        JsonNode root;
+        try {
+            root = objectMapper.readTree(json);
+        } catch (Exception e) {
+            System.err.println("Ignoring invalid fan-out targets: " + e.getMessage());
+            return targets;
+        }
+        if (!root.isArray()) {
+            System.err.println("Ignoring fan-out targets, expected a JSON array");
+            return targets;
+        }
+        for (JsonNode node : root) {
+            Target target = new Target(node.path("name").asText(null), node.path("table").asText(null),
+                    node.path("key").asText(null), node.path("source").asText(null),
+                    node.path("counter").asText("boycott_count"));
+            if (isBlank(target.name()) || isBlank(target.table()) || isBlank(target.key())
+                    || isBlank(target.source()) || COMPANY_TARGET.equals(target.name())) {
+                System.err.println("Ignoring invalid fan-out target: " + node);
+                continue;
+            }
+            if (targets.size() == MAX_TARGETS) {
+                System.err.println("Ignoring fan-out targets beyond " + MAX_TARGETS);
+                break;
+            }
+            targets.add(target);
+        }
+        return targets;
+    }
+
+    public boolean isConfigured() {
+        return !targets.isEmpty();
+    }
+
+    /**
+     * Writes the company and every target in one transaction.
+     *
+     * @param sources request values by name, such as "sub" and path or query parameters
+     * @throws IllegalArgumentException when a target's source value is missing
+     * @throws FanOutCancelledException when any condition fails or the transaction conflicts
+     */
+    public void apply(String companyId, int delta, Long expectedCount, Map<String, String> sources) {
+        List<String> names = new ArrayList<>(targets.size() + 1);
+        List<TransactWriteItem> writes = new ArrayList<>(targets.size() + 1);
+        Update company = countUpdater.buildTransactUpdate(companyId, delta, expectedCount);
+        names.add(COMPANY_TARGET);
+        writes.add(TransactWriteItem.builder().update(company).build());
+        for (Target target : targets) {
+            String keyValue = sources.get(target.source());
+            if (keyValue == null || keyValue.isEmpty()) {
+                throw new IllegalArgumentException(target.source() + " not present");
+            }
+            names.add(target.name());
+            writes.add(TransactWriteItem.builder().update(Update.builder()
+                    .tableName(target.table())
+                    .key(Map.of(target.key(), AttributeValue.fromS(keyValue)))
+                    .updateExpression("SET #counter = if_not_exists(#counter, :zero) + :delta")
+                    .conditionExpression("attribute_exists(#key)")
+                    .expressionAttributeNames(Map.of("#counter", target.counter(), "#key", target.key()))
+                    .expressionAttributeValues(BoycottCountUpdater.expressionValues(delta))
+                    .build()).build());
+        }
+        try {
+            dynamoDb.transactWriteItems(TransactWriteItemsRequest.builder().transactItems(writes).build());
+        } catch (TransactionCanceledException e) {
+            List<CancellationReason> reasons = e.hasCancellationReasons() ? e.cancellationReasons() : List.of();
+            List<Failure> failures = new ArrayList<>();
+            for (int i = 0; i < reasons.size() && i < names.size(); i++) {
+                CancellationReason reason = reasons.get(i);
+                if (reason.code() == null || "None".equals(reason.code())) {
+                    continue;
+                }
+                failures.add(new Failure(names.get(i), writes.get(i).update().tableName(), reason.code(),
+                        reason.hasItem() ? reason.item() : null));
+            }
+            throw new FanOutCancelledException(failures, e);
+        }
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+}
@@ -0,0 +1,308 @@
+package com.boycottpro.companies;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.ScheduledEvent;
+import com.boycottpro.utilities.Logger;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.LongSupplier;
+
+/**
+ * Scheduled job that recomputes boycott_count from the per-user records in
+ * the user_boycotts table (one item per user and company) and writes back
+ * only the companies whose stored count has drifted.
+ *
+ * The table is read with a parallel scan of RECOUNT_SEGMENTS segments, split
+ * across a fork-join pool. Each segment keeps one mutable counter per company,
+ * so memory grows with the number of companies and not with the number of
+ * records. Finished segments are checkpointed in {@link RecountCheckpoints}.
+ * The deadline is checked between scan pages and leaves a margin of a tenth
+ * of the invocation's remaining time, between 2 s and 60 s. When it passes,
+ * a segment saves its counts so far with the key to resume from, and the job
+ * reports a pause; the next invocation with the same run id (default: the
+ * UTC date) resumes from the checkpoints. The snapshot cannot be resumed, so
+ * a snapshot cut off by the deadline is taken again from the start.
+ *
+ * Before any segment is scanned, the run snapshots every company's
+ * boycott_count. Drift is the recount minus that snapshot, and it is applied
+ * as a delta, so increments that land while the run is in progress are kept.
+ * A record written between the snapshot and its segment's scan can still
+ * skew one run's drift, so a correction is only applied when the previous
+ * completed run found the same drift for the company. Sharded companies are
+ * skipped because part of their count lives on shard items.
+ */
+public class BoycottRecountJob implements RequestHandler<ScheduledEvent, String> {
+
+    public static final String DEFAULT_USER_BOYCOTTS_TABLE = "user_boycotts";
+    static final long MIN_TIME_MARGIN_MILLIS = 2000;
+    static final long MAX_TIME_MARGIN_MILLIS = 60000;
+    private static final DateTimeFormatter RUN_ID = DateTimeFormatter.ofPattern("yyyyMMdd").withZone(ZoneOffset.UTC);
+
+    private final DynamoDbClient dynamoDb;
+    private final RecountCheckpoints checkpoints;
+    private final CompanyShardConfig shardConfig;
+    private final String userBoycottsTable;
+    private final int segments;
+    private final int parallelism;
+    private final int pageSize;
+    private final LongSupplier clock;
+
+    public BoycottRecountJob() {
+        this(DynamoDbClients.syncClient());
+    }
+
+    public BoycottRecountJob(DynamoDbClient dynamoDb) {
+        this(dynamoDb,
+                new RecountCheckpoints(dynamoDb, env("RECOUNT_CHECKPOINT_TABLE", RecountCheckpoints.DEFAULT_TABLE)),
+                CompanyShardConfig.fromEnv(),
+                env("USER_BOYCOTTS_TABLE", DEFAULT_USER_BOYCOTTS_TABLE),
+                DynamoDbClients.envInt("RECOUNT_SEGMENTS", 16),
+                DynamoDbClients.envInt("RECOUNT_PARALLELISM", 8),
+                DynamoDbClients.envInt("RECOUNT_PAGE_SIZE", 1000),
+                System::currentTimeMillis);
+    }
+
+    BoycottRecountJob(DynamoDbClient dynamoDb, RecountCheckpoints checkpoints, CompanyShardConfig shardConfig,
+                      String userBoycottsTable, int segments, int parallelism, int pageSize, LongSupplier clock) {
+        this.dynamoDb = dynamoDb;
+        this.checkpoints = checkpoints;
+        this.shardConfig = shardConfig;
+        this.userBoycottsTable = userBoycottsTable;
+        this.segments = Math.max(1, segments);
+        this.parallelism = Math.max(1, parallelism);
+        this.pageSize = Math.max(1, pageSize);
+        this.clock = clock;
+    }
+
+    /** Company counts from a range of segments, plus how many were left unscanned. */
+    static final class SegmentCounts {
+        final Map<String, long[]> counts;
+        int remaining;
+
+        SegmentCounts(Map<String, long[]> counts, int remaining) {
+            this.counts = counts;
+            this.remaining = remaining;
+        }
+
+        SegmentCounts merge(SegmentCounts other) {
+            SegmentCounts into = counts.size() >= other.counts.size() ? this : other;
+            SegmentCounts from = into == this ? other : this;
+            for (Map.Entry<String, long[]> entry : from.counts.entrySet()) {
+                long[] cell = into.counts.putIfAbsent(entry.getKey(), entry.getValue());
+                if (cell != null) {
+                    cell[0] += entry.getValue()[0];
+                }
+            }
+            into.remaining += from.remaining;
+            return into;
+        }
+    }
+
+    private final class SegmentRange extends RecursiveTask<SegmentCounts> {
+        private final String runId;
+        private final int from;
+        private final int to;
+        private final long deadline;
+
+        SegmentRange(String runId, int from, int to, long deadline) {
+            this.runId = runId;
+            this.from = from;
+            this.to = to;
+            this.deadline = deadline;
+        }
+
+        @Override
+        protected SegmentCounts compute() {
+            if (to - from == 1) {
+                return countSegment(runId, from, deadline);
+            }
+            int middle = (from + to) >>> 1;
+            SegmentRange left = new SegmentRange(runId, from, middle, deadline);
+            left.fork();
+            SegmentCounts right = new SegmentRange(runId, middle, to, deadline).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    @Override
+    public String handleRequest(ScheduledEvent event, Context context) {
+        String runId = runId(event);
+        if (checkpoints.isComplete(runId)) {
+            return "recount " + runId + " already complete";
+        }
+        long remainingMillis = context == null ? 0 : context.getRemainingTimeInMillis();
+        long deadline = context == null
+                ? Long.MAX_VALUE
+                : clock.getAsLong() + remainingMillis - timeMargin(remainingMillis);
+        Map<String, long[]> snapshot = checkpoints.loadSnapshot(runId);
+        if (snapshot == null) {
+            snapshot = clock.getAsLong() >= deadline ? null : snapshotCounts(deadline);
+            if (snapshot == null) {
+                return "recount " + runId + " paused, segments remaining = " + segments;
+            }
+            checkpoints.saveSnapshot(runId, snapshot);
+        }
+        ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, segments));
+        SegmentCounts result;
+        try {
+            result = pool.invoke(new SegmentRange(runId, 0, segments, deadline));
+        } finally {
+            pool.shutdown();
+        }
+        if (result.remaining > 0) {
+            return "recount " + runId + " paused, segments remaining = " + result.remaining;
+        }
+        String summary = writeBack(result.counts, snapshot);
+        checkpoints.markComplete(runId);
+        return "recount " + runId + ": " + summary;
+    }
+
+    /** Time kept back from the deadline: a tenth of what remains, between the minimum and maximum margin. */
+    static long timeMargin(long remainingMillis) {
+        return Math.min(MAX_TIME_MARGIN_MILLIS, Math.max(MIN_TIME_MARGIN_MILLIS, remainingMillis / 10));
+    }
+
+    SegmentCounts countSegment(String runId, int segment, long deadline) {
+        Map<String, long[]> saved = checkpoints.load(runId, segment);
+        if (saved != null) {
+            return new SegmentCounts(saved, 0);
+        }
+        if (clock.getAsLong() >= deadline) {
+            return new SegmentCounts(new HashMap<>(), 1);
+        }
+        RecountCheckpoints.Partial partial = checkpoints.loadPartial(runId, segment);
+        Map<String, long[]> counts = partial == null ? new HashMap<>() : partial.counts();
+        Map<String, AttributeValue> startKey = partial == null ? null : partial.startKey();
+        int pages = partial == null ? 0 : partial.pages();
+        do {
+            ScanRequest.Builder request = ScanRequest.builder()
+                    .tableName(userBoycottsTable)
+                    .segment(segment)
+                    .totalSegments(segments)
+                    .projectionExpression("company_id")
+                    .limit(pageSize);
+            if (startKey != null) {
+                request.exclusiveStartKey(startKey);
+            }
+            ScanResponse response = dynamoDb.scan(request.build());
+            for (Map<String, AttributeValue> item : response.items()) {
+                AttributeValue companyId = item.get("company_id");
+                if (companyId != null && companyId.s() != null) {
+                    counts.computeIfAbsent(companyId.s(), k -> new long[1])[0]++;
+                }
+            }
+            pages++;
+            startKey = response.hasLastEvaluatedKey() && !response.lastEvaluatedKey().isEmpty()
+                    ? response.lastEvaluatedKey() : null;
+            if (startKey != null && clock.getAsLong() >= deadline) {
+                checkpoints.savePartial(runId, segment, new RecountCheckpoints.Partial(counts, startKey, pages));
+                return new SegmentCounts(new HashMap<>(), 1);
+            }
+        } while (startKey != null);
+        checkpoints.save(runId, segment, counts);
+        return new SegmentCounts(counts, 0);
+    }
+
+    /** Every company's boycott_count, or null when the deadline passes before the scan ends. */
+    private Map<String, long[]> snapshotCounts(long deadline) {
+        Map<String, long[]> snapshot = new HashMap<>();
+        Map<String, AttributeValue> startKey = null;
+        do {
+            ScanRequest.Builder request = ScanRequest.builder()
+                    .tableName(BoycottCountUpdater.TABLE_NAME)
+                    .projectionExpression("company_id, boycott_count")
+                    .consistentRead(true)
+                    .limit(pageSize);
+            if (startKey != null) {
+                request.exclusiveStartKey(startKey);
+            }
+            ScanResponse response = dynamoDb.scan(request.build());
+            for (Map<String, AttributeValue> item : response.items()) {
+                long stored = item.containsKey("boycott_count") ? BoycottCountUpdater.countOf(item) : 0;
+                snapshot.put(item.get("company_id").s(), new long[]{stored});
+            }
+            startKey = response.hasLastEvaluatedKey() && !response.lastEvaluatedKey().isEmpty()
+                    ? response.lastEvaluatedKey() : null;
+            if (startKey != null && clock.getAsLong() >= deadline) {
+                return null;
+            }
+        } while (startKey != null);
+        return snapshot;
+    }
+
+    private String writeBack(Map<String, long[]> counts, Map<String, long[]> snapshot) {
+        Map<String, long[]> previous = checkpoints.loadPendingDrift();
+        Map<String, long[]> pending = new HashMap<>();
+        Map<String, Long> confirmed = new HashMap<>();
+        int unchanged = 0;
+        int skipped = 0;
+        for (Map.Entry<String, long[]> entry : snapshot.entrySet()) {
+            String companyId = entry.getKey();
+            if (shardConfig.isSharded(companyId)) {
+                skipped++;
+                continue;
+            }
+            long[] cell = counts.get(companyId);
+            long drift = (cell == null ? 0 : cell[0]) - entry.getValue()[0];
+            long[] seen = previous.get(companyId);
+            if (drift == 0) {
+                unchanged++;
+            } else if (seen != null && seen[0] == drift) {
+                confirmed.put(companyId, drift);
+            } else {
+                pending.put(companyId, new long[]{drift});
+            }
+        }
+        // saved before correcting, so a retried write-back cannot apply a delta twice
+        checkpoints.savePendingDrift(pending);
+        int corrected = 0;
+        for (Map.Entry<String, Long> entry : confirmed.entrySet()) {
+            try {
+                dynamoDb.updateItem(correction(entry.getKey(), entry.getValue()));
+                corrected++;
+            } catch (ConditionalCheckFailedException e) {
+                skipped++;
+                Logger.error(218, entry.getKey(), "company removed during recount");
+            }
+        }
+        return "corrected = " + corrected + ", unchanged = " + unchanged + ", pending = " + pending.size()
+                + ", skipped = " + skipped;
+    }
+
+    static UpdateItemRequest correction(String companyId, long drift) {
+        return UpdateItemRequest.builder()
+                .tableName(BoycottCountUpdater.TABLE_NAME)
+                .key(Map.of("company_id", AttributeValue.fromS(companyId)))
+                .updateExpression("SET boycott_count = if_not_exists(boycott_count, :zero) + :drift")
+                .conditionExpression("attribute_exists(company_id)")
+                .expressionAttributeValues(Map.of(
+                        ":zero", AttributeValue.fromN("0"),
+                        ":drift", AttributeValue.fromN(Long.toString(drift))))
+                .build();
+    }
+
+    private static String runId(ScheduledEvent event) {
+        if (event != null && event.getDetail() != null && event.getDetail().get("run_id") != null) {
+            return event.getDetail().get("run_id").toString();
+        }
+        return RUN_ID.format(Instant.now());
+    }
+
+    private static String env(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isBlank() ? defaultValue : value;
+    }
+}
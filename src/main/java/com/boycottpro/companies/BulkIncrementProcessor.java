@@ -0,0 +1,207 @@
+package com.boycottpro.companies;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.CancellationReason;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+
+/**
+ * Applies a JSON batch of {"company_id", "increment"} entries. Entries are
+ * netted per company, then written either concurrently or, when "atomic" is
+ * true, as one TransactWriteItems call. Concurrent writes go through the async
+ * client when one is configured, otherwise through a bounded thread pool.
+ * Each entry must pass the caller's admission check (the toggle rate limit)
+ * before it is netted; a refused entry is reported as rate_limited, and in an
+ * atomic batch it cancels the whole batch.
+ */
+public class BulkIncrementProcessor {
+
+    public static final int MAX_ITEMS = 100;
+    static final String UPDATED = "updated";
+    static final String NOT_FOUND = "not_found";
+    static final String FAILED = "failed";
+    static final String CANCELLED = "cancelled";
+    static final String RATE_LIMITED = "rate_limited";
+
+    private final BoycottCountUpdater countUpdater;
+    private final DynamoDbClient dynamoDb;
+    private final ObjectMapper objectMapper;
+    private final int parallelism;
+    private ExecutorService executor;
+
+    public BulkIncrementProcessor(DynamoDbClient dynamoDb, BoycottCountUpdater countUpdater, ObjectMapper objectMapper) {
+        this(dynamoDb, countUpdater, objectMapper, parallelismFromEnv());
+    }
+
+    public BulkIncrementProcessor(DynamoDbClient dynamoDb, BoycottCountUpdater countUpdater,
+                                  ObjectMapper objectMapper, int parallelism) {
+        this.dynamoDb = dynamoDb;
+        this.countUpdater = countUpdater;
+        this.objectMapper = objectMapper;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public record ItemResult(@JsonProperty("company_id") String companyId,
+                             @JsonProperty("increment") boolean increment,
+                             @JsonProperty("status") String status) {
+    }
+
+    public List<ItemResult> process(String body) {
+        return process(body, companyId -> true);
+    }
+
+    /** As {@link #process(String)}, asking {@code admit} once per entry after the body is validated. */
+    public List<ItemResult> process(String body, Predicate<String> admit) {
+        JsonNode root;
+        try {
+            root = objectMapper.readTree(body);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("request body is not valid json");
+        }
+        JsonNode items = root.get("items");
+        if (items == null || !items.isArray() || items.isEmpty()) {
+            throw new IllegalArgumentException("items not present");
+        }
+        if (items.size() > MAX_ITEMS) {
+            throw new IllegalArgumentException("too many items, maximum is " + MAX_ITEMS);
+        }
+        List<String> companyIds = new ArrayList<>();
+        List<Boolean> increments = new ArrayList<>();
+        Map<String, Integer> deltas = new LinkedHashMap<>();
+        for (JsonNode item : items) {
+            String companyId = item.path("company_id").asText(null);
+            JsonNode increment = item.get("increment");
+            if (companyId == null || companyId.isEmpty()) {
+                throw new IllegalArgumentException("company_id not present");
+            }
+            if (increment == null || !increment.isBoolean()) {
+                throw new IllegalArgumentException("increment not acceptable value");
+            }
+            companyIds.add(companyId);
+            increments.add(increment.booleanValue());
+        }
+        boolean atomic = root.path("atomic").asBoolean(false);
+        boolean[] refused = new boolean[companyIds.size()];
+        boolean anyRefused = false;
+        for (int i = 0; i < companyIds.size(); i++) {
+            refused[i] = !admit.test(companyIds.get(i));
+            anyRefused |= refused[i];
+            if (!refused[i]) {
+                deltas.merge(companyIds.get(i), increments.get(i) ? 1 : -1, Integer::sum);
+            }
+        }
+        Map<String, String> statuses;
+        if (atomic && anyRefused) {
+            statuses = new HashMap<>();
+        } else {
+            statuses = atomic ? writeTransaction(deltas) : writeConcurrently(deltas);
+        }
+        List<ItemResult> results = new ArrayList<>(companyIds.size());
+        for (int i = 0; i < companyIds.size(); i++) {
+            String status = refused[i] ? RATE_LIMITED : statuses.getOrDefault(companyIds.get(i), CANCELLED);
+            results.add(new ItemResult(companyIds.get(i), increments.get(i), status));
+        }
+        return results;
+    }
+
+    private Map<String, String> writeConcurrently(Map<String, Integer> deltas) {
+        Map<String, String> statuses = new HashMap<>();
+        Map<String, Future<?>> pending = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : deltas.entrySet()) {
+            if (entry.getValue() == 0) {
+                statuses.put(entry.getKey(), UPDATED);
+                continue;
+            }
+            if (countUpdater.supportsAsync()) {
+                pending.put(entry.getKey(), countUpdater.applyDeltaAsync(entry.getKey(), entry.getValue()));
+            } else {
+                pending.put(entry.getKey(), executor().submit(
+                        () -> countUpdater.applyDelta(entry.getKey(), entry.getValue())));
+            }
+        }
+        for (Map.Entry<String, Future<?>> entry : pending.entrySet()) {
+            statuses.put(entry.getKey(), statusOf(entry.getValue()));
+        }
+        return statuses;
+    }
+
+    private String statusOf(Future<?> future) {
+        try {
+            future.get();
+            return UPDATED;
+        } catch (ExecutionException e) {
+            return e.getCause() instanceof ConditionalCheckFailedException ? NOT_FOUND : FAILED;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return FAILED;
+        }
+    }
+
+    private Map<String, String> writeTransaction(Map<String, Integer> deltas) {
+        Map<String, String> statuses = new HashMap<>();
+        List<String> written = new ArrayList<>();
+        List<TransactWriteItem> writes = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : deltas.entrySet()) {
+            statuses.put(entry.getKey(), UPDATED);
+            if (entry.getValue() != 0) {
+                written.add(entry.getKey());
+                writes.add(TransactWriteItem.builder()
+                        .update(countUpdater.buildTransactUpdate(entry.getKey(), entry.getValue()))
+                        .build());
+            }
+        }
+        if (writes.isEmpty()) {
+            return statuses;
+        }
+        try {
+            dynamoDb.transactWriteItems(TransactWriteItemsRequest.builder().transactItems(writes).build());
+        } catch (TransactionCanceledException e) {
+            List<CancellationReason> reasons = e.hasCancellationReasons() ? e.cancellationReasons() : List.of();
+            for (String companyId : deltas.keySet()) {
+                statuses.put(companyId, CANCELLED);
+            }
+            for (int i = 0; i < reasons.size() && i < written.size(); i++) {
+                if ("ConditionalCheckFailed".equals(reasons.get(i).code())) {
+                    statuses.put(written.get(i), NOT_FOUND);
+                }
+            }
+        }
+        return statuses;
+    }
+
+    private synchronized ExecutorService executor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+                Thread thread = new Thread(runnable, "bulk-increment");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    private static int parallelismFromEnv() {
+        String value = System.getenv("BULK_PARALLELISM");
+        try {
+            return value == null ? 8 : Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return 8;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.boycottpro.companies;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Per-company shard counts for hot companies, read from COMPANY_SHARDS
+ * in the form "company-a=8,company-b=16". Companies not listed are unsharded.
+ */
+public class CompanyShardConfig {
+
+    public static final int MAX_SHARDS = 64;
+    private final Map<String, Integer> shardCounts;
+
+    public CompanyShardConfig(Map<String, Integer> shardCounts) {
+        this.shardCounts = new HashMap<>(shardCounts);
+    }
+
+    public static CompanyShardConfig fromEnv() {
+        return parse(System.getenv("COMPANY_SHARDS"));
+    }
+
+    public static CompanyShardConfig parse(String spec) {
+        Map<String, Integer> counts = new HashMap<>();
+        if (spec != null && !spec.isBlank()) {
+            for (String entry : spec.split(",")) {
+                String[] parts = entry.trim().split("=");
+                if (parts.length != 2 || parts[0].isBlank()) {
+                    continue;
+                }
+                try {
+                    int shards = Integer.parseInt(parts[1].trim());
+                    if (shards > 1) {
+                        counts.put(parts[0].trim(), Math.min(shards, MAX_SHARDS));
+                    }
+                } catch (NumberFormatException e) {
+                    System.err.println("Ignoring invalid shard count: " + entry);
+                }
+            }
+        }
+        return new CompanyShardConfig(counts);
+    }
+
+    public int shardCount(String companyId) {
+        Integer shards = shardCounts.get(companyId);
+        return shards == null ? 1 : shards;
+    }
+
+    public boolean isSharded(String companyId) {
+        return shardCount(companyId) > 1;
+    }
+
+    public Set<String> shardedCompanies() {
+        return Collections.unmodifiableSet(shardCounts.keySet());
+    }
+
+    public static String shardKey(String companyId, int shard) {
+        return companyId + "#shard-" + shard;
+    }
+}
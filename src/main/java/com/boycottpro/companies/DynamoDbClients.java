@@ -0,0 +1,67 @@
+package com.boycottpro.companies;
+
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClientBuilder;
+
+import java.time.Duration;
+
+/**
+ * Builds the DynamoDB clients used by the handlers. Timeouts and pool sizes
+ * can be overridden with the DYNAMODB_* environment variables.
+ */
+public final class DynamoDbClients {
+
+    private DynamoDbClients() {
+    }
+
+    public static DynamoDbClient syncClient() {
+        return syncClientBuilder().build();
+    }
+
+    /** The production client configuration, for callers that also override the endpoint. */
+    static DynamoDbClientBuilder syncClientBuilder() {
+        return DynamoDbClient.builder()
+                .overrideConfiguration(overrideConfiguration());
+    }
+
+    public static DynamoDbAsyncClient asyncClient() {
+        NettyNioAsyncHttpClient.Builder httpClient = NettyNioAsyncHttpClient.builder()
+                .maxConcurrency(envInt("DYNAMODB_MAX_CONNECTIONS", 64))
+                .maxPendingConnectionAcquires(envInt("DYNAMODB_MAX_PENDING_ACQUIRES", 1000))
+                .connectionTimeout(Duration.ofMillis(envInt("DYNAMODB_CONNECT_TIMEOUT_MS", 1000)))
+                .connectionAcquisitionTimeout(Duration.ofMillis(envInt("DYNAMODB_ACQUIRE_TIMEOUT_MS", 1000)))
+                .connectionMaxIdleTime(Duration.ofSeconds(60))
+                .tcpKeepAlive(true)
+                .useIdleConnectionReaper(true);
+        return DynamoDbAsyncClient.builder()
+                .httpClientBuilder(httpClient)
+                .overrideConfiguration(overrideConfiguration())
+                .build();
+    }
+
+    public static boolean asyncEnabled() {
+        return Boolean.parseBoolean(System.getenv("DYNAMODB_ASYNC"));
+    }
+
+    static ClientOverrideConfiguration overrideConfiguration() {
+        return ClientOverrideConfiguration.builder()
+                .apiCallTimeout(Duration.ofMillis(envInt("DYNAMODB_API_CALL_TIMEOUT_MS", 3000)))
+                .apiCallAttemptTimeout(Duration.ofMillis(envInt("DYNAMODB_ATTEMPT_TIMEOUT_MS", 800)))
+                .build();
+    }
+
+    static int envInt(String name, int defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.boycottpro.companies;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Constant-memory estimate of the most written company ids: a count-min
+ * sketch (DEPTH x WIDTH counters) plus the top-K ids by estimated count.
+ * Each row hashes the id's UTF-8 bytes with its own seeded 64-bit murmur3,
+ * so ids that collide in one row are unlikely to collide in the others.
+ * At the end of each window the top-K list is written to stdout as an EMF
+ * line, and every count is halved so older traffic fades. The window is
+ * checked on every record and read, and callers with idle periods should
+ * also call {@link #rollWindowIfDue()} on their own schedule. A company
+ * whose estimate reaches the threshold within a window is passed to the
+ * {@link Listener} once per window, so it can be handled specially (for
+ * example added to COMPANY_SHARDS) before its partition saturates. The
+ * default listener writes a HotKeyDetected EMF line.
+ *
+ * Estimates are per instance. Under Lambda each instance sees only its
+ * share of traffic, so the threshold applies to that share.
+ */
+public class HotKeyTracker {
+
+    static final int DEPTH = 4;
+    static final int WIDTH = 2048;
+    private static final long[] SEEDS = {0x9E3779B97F4A7C15L, 0xBF58476D1CE4E5B9L, 0x94D049BB133111EBL,
+            0x2545F4914F6CDD1DL};
+    private static final long C1 = 0x87C37B91114253D5L;
+    private static final long C2 = 0x4CF5AD432745937FL;
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    public interface Listener {
+        void onHotKey(String companyId, long estimate);
+    }
+
+    private final int topK;
+    private final long threshold;
+    private final long windowMillis;
+    private final LongSupplier clock;
+    private final PrintStream out;
+    private final AtomicLongArray counters = new AtomicLongArray(DEPTH * WIDTH);
+    // guarded by this
+    private final Map<String, Long> top = new HashMap<>();
+    private final Set<String> flagged = new HashSet<>();
+    private volatile long admission;
+    private volatile long windowStart;
+    private volatile Listener listener = this::emitHotKey;
+
+    public HotKeyTracker(int topK, long threshold, long windowMillis) {
+        this(topK, threshold, windowMillis, System::currentTimeMillis, System.out);
+    }
+
+    HotKeyTracker(int topK, long threshold, long windowMillis, LongSupplier clock, PrintStream out) {
+        this.topK = Math.max(1, topK);
+        this.threshold = Math.max(1, threshold);
+        this.windowMillis = Math.max(1, windowMillis);
+        this.clock = clock;
+        this.out = out;
+        this.windowStart = clock.getAsLong();
+    }
+
+    /** Returns null when HOT_KEY_TRACKING=false. */
+    public static HotKeyTracker fromEnv() {
+        if ("false".equalsIgnoreCase(System.getenv("HOT_KEY_TRACKING"))) {
+            return null;
+        }
+        return new HotKeyTracker(DynamoDbClients.envInt("HOT_KEY_TOP_K", 10),
+                DynamoDbClients.envInt("HOT_KEY_THRESHOLD", 600),
+                DynamoDbClients.envInt("HOT_KEY_WINDOW_SECONDS", 60) * 1000L);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** Counts one write for the company and returns its estimated count in the window. */
+    public long record(String companyId) {
+        rollWindowIfDue();
+        byte[] id = companyId.getBytes(StandardCharsets.UTF_8);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, counters.incrementAndGet(row * WIDTH + bucket(id, row)));
+        }
+        if (estimate >= admission) {
+            offer(companyId, estimate);
+        }
+        return estimate;
+    }
+
+    public long estimate(String companyId) {
+        rollWindowIfDue();
+        byte[] id = companyId.getBytes(StandardCharsets.UTF_8);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, counters.get(row * WIDTH + bucket(id, row)));
+        }
+        return estimate;
+    }
+
+    /** Current top-K, highest estimate first. */
+    public List<Map.Entry<String, Long>> topKeys() {
+        rollWindowIfDue();
+        return sortedTop();
+    }
+
+    private synchronized List<Map.Entry<String, Long>> sortedTop() {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(top.size());
+        for (Map.Entry<String, Long> entry : top.entrySet()) {
+            entries.add(Map.entry(entry.getKey(), entry.getValue()));
+        }
+        entries.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        return entries;
+    }
+
+    private void offer(String companyId, long estimate) {
+        boolean newlyHot;
+        synchronized (this) {
+            if (top.containsKey(companyId) || top.size() < topK) {
+                top.put(companyId, estimate);
+            } else {
+                Map.Entry<String, Long> lowest = lowest();
+                if (estimate <= lowest.getValue()) {
+                    return;
+                }
+                top.remove(lowest.getKey());
+                top.put(companyId, estimate);
+            }
+            admission = top.size() < topK ? 0 : lowest().getValue();
+            newlyHot = estimate >= threshold && flagged.add(companyId);
+        }
+        if (newlyHot) {
+            listener.onHotKey(companyId, estimate);
+        }
+    }
+
+    private Map.Entry<String, Long> lowest() {
+        Map.Entry<String, Long> lowest = null;
+        for (Map.Entry<String, Long> entry : top.entrySet()) {
+            if (lowest == null || entry.getValue() < lowest.getValue()) {
+                lowest = entry;
+            }
+        }
+        return lowest;
+    }
+
+    /** Emits and decays the window once it has ended; cheap to call when it has not. */
+    public void rollWindowIfDue() {
+        long now = clock.getAsLong();
+        if (now - windowStart < windowMillis) {
+            return;
+        }
+        synchronized (this) {
+            if (now - windowStart < windowMillis) {
+                return;
+            }
+            if (!top.isEmpty() && InvocationMetrics.ENABLED) {
+                out.println(toEmf(now));
+            }
+            // per-counter CAS so increments racing with the decay are kept
+            for (int i = 0; i < counters.length(); i++) {
+                counters.updateAndGet(i, count -> count >> 1);
+            }
+            top.replaceAll((companyId, estimate) -> estimate >> 1);
+            top.values().removeIf(estimate -> estimate == 0);
+            admission = top.size() < topK ? 0 : lowest().getValue();
+            flagged.clear();
+            windowStart = now;
+        }
+    }
+
+    synchronized String toEmf(long timestampMillis) {
+        List<Map.Entry<String, Long>> keys = sortedTop();
+        ObjectNode emf = emf(timestampMillis, "HotKeyMaxEstimate");
+        emf.put("HotKeyMaxEstimate", keys.isEmpty() ? 0 : keys.get(0).getValue());
+        emf.put("window_seconds", windowMillis / 1000);
+        ArrayNode hot = emf.putArray("hot_companies");
+        for (Map.Entry<String, Long> key : keys) {
+            hot.addObject().put("company_id", key.getKey()).put("estimate", key.getValue());
+        }
+        return emf.toString();
+    }
+
+    String hotKeyEmf(String companyId, long estimate, long timestampMillis) {
+        ObjectNode emf = emf(timestampMillis, "HotKeyDetected");
+        emf.put("HotKeyDetected", 1);
+        emf.put("company_id", companyId);
+        emf.put("estimate", estimate);
+        emf.put("threshold", threshold);
+        return emf.toString();
+    }
+
+    private void emitHotKey(String companyId, long estimate) {
+        if (InvocationMetrics.ENABLED) {
+            out.println(hotKeyEmf(companyId, estimate, clock.getAsLong()));
+        }
+    }
+
+    private static ObjectNode emf(long timestampMillis, String metric) {
+        ObjectNode emf = JSON.createObjectNode();
+        ObjectNode directive = emf.putObject("_aws").put("Timestamp", timestampMillis)
+                .putArray("CloudWatchMetrics").addObject();
+        directive.put("Namespace", InvocationMetrics.NAMESPACE);
+        directive.putArray("Dimensions").addArray().add("FunctionName");
+        directive.putArray("Metrics").addObject().put("Name", metric).put("Unit", "Count");
+        emf.put("FunctionName", InvocationMetrics.FUNCTION_NAME);
+        return emf;
+    }
+
+    private static int bucket(byte[] id, int row) {
+        return (int) (murmur3(id, SEEDS[row]) & (WIDTH - 1));
+    }
+
+    /** First 64 bits of MurmurHash3 x64_128. */
+    static long murmur3(byte[] data, long seed) {
+        long h1 = seed;
+        long h2 = seed;
+        int blocks = data.length / 16;
+        for (int i = 0; i < blocks; i++) {
+            long k1 = littleEndian(data, i * 16, 8);
+            long k2 = littleEndian(data, i * 16 + 8, 8);
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27) + h2;
+            h1 = h1 * 5 + 0x52DCE729;
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31) + h1;
+            h2 = h2 * 5 + 0x38495AB5;
+        }
+        int tail = blocks * 16;
+        int remaining = data.length - tail;
+        if (remaining > 8) {
+            h2 ^= mixK2(littleEndian(data, tail + 8, remaining - 8));
+        }
+        if (remaining > 0) {
+            h1 ^= mixK1(littleEndian(data, tail, Math.min(remaining, 8)));
+        }
+        h1 ^= data.length;
+        h2 ^= data.length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        return h1 + h2;
+    }
+
+    private static long littleEndian(byte[] data, int offset, int length) {
+        long value = 0;
+        for (int i = length - 1; i >= 0; i--) {
+            value = (value << 8) | (data[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static long mixK1(long k1) {
+        return Long.rotateLeft(k1 * C1, 31) * C2;
+    }
+
+    private static long mixK2(long k2) {
+        return Long.rotateLeft(k2 * C2, 33) * C1;
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xFF51AFD7ED558CCDL;
+        k ^= k >>> 33;
+        k *= 0xC4CEB9FE1A85EC53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
@@ -0,0 +1,118 @@
+package com.boycottpro.companies;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import com.boycottpro.utilities.Logger;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SQS entry point for queued increments. Messages look like
+ * {"company_id": "...", "increment": true}, or {"company_id": "...", "delta": n}
+ * for deltas deferred by {@link WriteBehindJournal}, and are summed per company
+ * so each batch costs at most one UpdateItem per company. Messages that are
+ * invalid or unreadable are returned as failures, so SQS moves them to the
+ * dead-letter queue after maxReceiveCount. So are messages whose update hit
+ * throttling or a transient error, for redelivery. A company that does not
+ * exist, or any other update error that a retry cannot fix, is logged,
+ * counted and acknowledged, so SQS does not redeliver it until
+ * maxReceiveCount.
+ */
+public class IncrementCompanyBoycottBatchHandler implements RequestHandler<SQSEvent, SQSBatchResponse> {
+
+    private final BoycottCountUpdater countUpdater;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private PrintStream metricsOut = InvocationMetrics.ENABLED ? System.out : null;
+
+    public IncrementCompanyBoycottBatchHandler() {
+        this(DynamoDbClients.syncClient());
+    }
+
+    public IncrementCompanyBoycottBatchHandler(DynamoDbClient dynamoDb) {
+        this.countUpdater = new BoycottCountUpdater(dynamoDb);
+    }
+
+    void setMetricsOutput(PrintStream metricsOut) {
+        this.metricsOut = metricsOut;
+    }
+
+    @Override
+    public SQSBatchResponse handleRequest(SQSEvent event, Context context) {
+        InvocationMetrics metrics = InvocationMetrics.start();
+        List<SQSBatchResponse.BatchItemFailure> failures = new ArrayList<>();
+        Map<String, Integer> deltas = new LinkedHashMap<>();
+        Map<String, List<String>> messageIds = new HashMap<>();
+        List<SQSEvent.SQSMessage> records = event == null || event.getRecords() == null
+                ? List.of() : event.getRecords();
+        for (SQSEvent.SQSMessage message : records) {
+            try {
+                JsonNode body = objectMapper.readTree(message.getBody());
+                String companyId = body.path("company_id").asText(null);
+                JsonNode increment = body.get("increment");
+                JsonNode delta = body.get("delta");
+                boolean validIncrement = increment != null && increment.isBoolean();
+                boolean validDelta = delta != null && delta.isInt();
+                if (companyId == null || companyId.isEmpty() || !(validIncrement || validDelta)) {
+                    Logger.error(49, null, "invalid increment message " + message.getMessageId());
+                    failures.add(new SQSBatchResponse.BatchItemFailure(message.getMessageId()));
+                    continue;
+                }
+                int adjustment = validDelta ? delta.intValue() : (increment.booleanValue() ? 1 : -1);
+                deltas.merge(companyId, adjustment, Integer::sum);
+                messageIds.computeIfAbsent(companyId, k -> new ArrayList<>()).add(message.getMessageId());
+            } catch (Exception e) {
+                Logger.error(56, null, "unreadable increment message " + message.getMessageId());
+                failures.add(new SQSBatchResponse.BatchItemFailure(message.getMessageId()));
+            }
+        }
+        for (Map.Entry<String, Integer> entry : deltas.entrySet()) {
+            if (entry.getValue() == 0) {
+                continue;
+            }
+            try {
+                countUpdater.applyDelta(entry.getKey(), entry.getValue());
+            } catch (ConditionalCheckFailedException e) {
+                Logger.error(64, null, "dropping delta " + entry.getValue() + " for unknown company " + entry.getKey());
+                metrics.conditionalCheckFailed();
+            } catch (SdkException e) {
+                if (!isTransient(e)) {
+                    Logger.error(67, null, "dropping delta " + entry.getValue() + " for " + entry.getKey()
+                            + ": " + e.getMessage());
+                    metrics.count("DroppedDelta");
+                    continue;
+                }
+                Logger.error(71, null, "batch update failed for " + entry.getKey() + ": " + e.getMessage());
+                if (e instanceof SdkServiceException && ((SdkServiceException) e).isThrottlingException()) {
+                    metrics.throttled();
+                }
+                for (String messageId : messageIds.get(entry.getKey())) {
+                    failures.add(new SQSBatchResponse.BatchItemFailure(messageId));
+                }
+            }
+        }
+        metrics.emit(metricsOut);
+        return new SQSBatchResponse(failures);
+    }
+
+    /** Throttling, 5xx and client-side (network, timeout) errors can succeed on redelivery. */
+    static boolean isTransient(SdkException e) {
+        if (e instanceof SdkServiceException) {
+            SdkServiceException service = (SdkServiceException) e;
+            return service.isThrottlingException() || service.statusCode() >= 500 || e.retryable();
+        }
+        return true;
+    }
+}
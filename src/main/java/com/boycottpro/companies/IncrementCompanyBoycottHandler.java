@@ -10,75 +10,368 @@ import com.boycottpro.utilities.JwtUtility;
 import com.boycottpro.utilities.Logger;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.crac.Core;
+import org.crac.Resource;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
-import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
 import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
-import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
 
+import java.io.PrintStream;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
-public class IncrementCompanyBoycottHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+public class IncrementCompanyBoycottHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>, Resource {
+
+    static final String PRIMING_COMPANY_ID = "snapstart-priming";
+    static final String PRIMING_SUB = "00000000-0000-0000-0000-000000000000";
+    private static final String ERROR_MESSAGE = "sorry, there was an error processing your request";
+    private static final Map<String, String> JSON_HEADERS = Map.of("Content-Type", "application/json");
+    // bodies that never change are serialized once instead of on every invocation
+    private static final String UNAUTHORIZED_BODY = toJson(Map.of("message", "Unauthorized"));
+    private static final String COMPANY_ID_MISSING_BODY = toJson(new ResponseMessage(400, ERROR_MESSAGE,
+            "company_id not present"));
+    private static final String INCREMENT_MISSING_BODY = toJson(new ResponseMessage(400, ERROR_MESSAGE,
+            "increment not present"));
+    private static final String INCREMENT_INVALID_BODY = toJson(new ResponseMessage(400, ERROR_MESSAGE,
+            "increment not acceptable value"));
+    private static final String COMPANY_NOT_FOUND_BODY = toJson(new ResponseMessage(404, ERROR_MESSAGE,
+            "company not found"));
+    private static final String IF_MATCH_INVALID_BODY = toJson(new ResponseMessage(400, ERROR_MESSAGE,
+            "If-Match not acceptable value"));
+    private static final String IF_MATCH_UNSUPPORTED_BODY = toJson(new ResponseMessage(400, ERROR_MESSAGE,
+            "If-Match not supported for this company"));
+    // 200 and 412 bodies are {"message": ..., "boycott_count": n}, filled in from a template
+    private static final String UPDATED_MESSAGE = "company record updated = true";
+    private static final String UPDATED_BODY = toJson(Map.of("message", UPDATED_MESSAGE));
+    private static final String UPDATED_COUNT_PREFIX = UPDATED_BODY.substring(0, UPDATED_BODY.length() - 1)
+            + ",\"boycott_count\":";
+    private static final String STALE_COUNT_PREFIX = "{\"message\":\"boycott_count does not match If-Match\","
+            + "\"boycott_count\":";
+    private static final String DEFERRED_BODY = toJson("company record update deferred");
+    private static final String RATE_LIMITED_BODY = toJson(new ResponseMessage(429, ERROR_MESSAGE,
+            "too many toggles, retry later"));
+    // throttled or conflicting fan-out transactions usually clear within a second
+    private static final String FAN_OUT_RETRY_AFTER_SECONDS = "1";
 
-    private static final String TABLE_NAME = "companies";
     private final DynamoDbClient dynamoDb;
+    private final BoycottCountUpdater countUpdater;
+    private final BulkIncrementProcessor bulkProcessor;
+    private UnknownCompanyCache unknownCompanies = UnknownCompanyCache.fromEnv();
+    private WriteBehindJournal writeBehind = WriteBehindJournal.fromEnv();
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private BoycottFanOut fanOut;
+    private volatile WriteCoalescer coalescer;
+    private final HotKeyTracker hotKeys = HotKeyTracker.fromEnv();
+    private ToggleRateLimiter rateLimiter;
+    private PrintStream metricsOut = InvocationMetrics.ENABLED ? System.out : null;
 
     public IncrementCompanyBoycottHandler() {
-        this.dynamoDb = DynamoDbClient.create();
+        this.dynamoDb = DynamoDbClients.syncClient();
+        this.countUpdater = DynamoDbClients.asyncEnabled()
+                ? new BoycottCountUpdater(dynamoDb, DynamoDbClients.asyncClient())
+                : new BoycottCountUpdater(dynamoDb);
+        this.bulkProcessor = new BulkIncrementProcessor(dynamoDb, countUpdater, objectMapper);
+        this.fanOut = BoycottFanOut.fromEnv(dynamoDb, countUpdater, objectMapper);
+        this.rateLimiter = ToggleRateLimiter.fromEnv(dynamoDb);
+        Core.getGlobalContext().register(this);
     }
 
     public IncrementCompanyBoycottHandler(DynamoDbClient dynamoDb) {
         this.dynamoDb = dynamoDb;
+        this.countUpdater = new BoycottCountUpdater(dynamoDb);
+        this.bulkProcessor = new BulkIncrementProcessor(dynamoDb, countUpdater, objectMapper);
+        this.fanOut = BoycottFanOut.fromEnv(dynamoDb, countUpdater, objectMapper);
+        this.rateLimiter = ToggleRateLimiter.fromEnv(dynamoDb);
     }
 
     @Override
     public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent event, Context context) {
+        InvocationMetrics metrics = InvocationMetrics.start();
+        APIGatewayProxyResponseEvent response = process(event, metrics);
+        metrics.endPhase("Response");
+        metrics.status(response.getStatusCode());
+        metrics.emit(metricsOut);
+        if (hotKeys != null) {
+            // reads and rejected requests also close the window, not only writes
+            hotKeys.rollWindowIfDue();
+        }
+        return response;
+    }
+
+    private APIGatewayProxyResponseEvent process(APIGatewayProxyRequestEvent event, InvocationMetrics metrics) {
         String sub = null;
         int lineNum = 39;
         try {
             sub = JwtUtility.getSubFromRestEvent(event);
+            metrics.endPhase("Auth");
             if (sub == null) {
             Logger.error(45, sub, "user is Unauthorized");
-            return response(401, Map.of("message", "Unauthorized"));
+            return precomputed(401, UNAUTHORIZED_BODY);
             }
             lineNum = 46;
             Map<String, String> pathParams = event.getPathParameters();
             String companyId = (pathParams != null) ? pathParams.get("company_id") : null;
             String incrementStr = pathParams != null ? pathParams.get("increment") : null;
+            if ((companyId == null || companyId.isEmpty())
+                    && event.getBody() != null && !event.getBody().isBlank()) {
+                lineNum = 52;
+                return bulkIncrement(sub, event.getBody());
+            }
             if (companyId == null || companyId.isEmpty()) {
                 Logger.error(51, sub, "company_id not present");
-                ResponseMessage message = new ResponseMessage(400,
-                        "sorry, there was an error processing your request",
-                        "company_id not present");
-                return response(400,message);
+                return precomputed(400, COMPANY_ID_MISSING_BODY);
             }
             if (incrementStr == null || incrementStr.isEmpty()) {
                 Logger.error(58, sub, "increment not present");
-                ResponseMessage message = new ResponseMessage(400,
-                        "sorry, there was an error processing your request",
-                        "increment not present");
-                return response(400,message);
+                return precomputed(400, INCREMENT_MISSING_BODY);
             }
             if (!(incrementStr.equals("true") || incrementStr.equals("false"))) {
                 Logger.error(65, sub, "increment not acceptable value");
-                ResponseMessage message = new ResponseMessage(400,
-                        "sorry, there was an error processing your request",
-                        "increment not acceptable value");
-                return response(400,message);
+                return precomputed(400, INCREMENT_INVALID_BODY);
+            }
+            if (unknownCompanies.isKnownMissing(companyId)) {
+                Logger.error(70, sub, "company not found (cached)");
+                return precomputed(404, COMPANY_NOT_FOUND_BODY);
+            }
+            Long expectedCount;
+            try {
+                expectedCount = expectedCount(event.getHeaders());
+            } catch (NumberFormatException e) {
+                Logger.error(72, sub, "If-Match not acceptable value");
+                return precomputed(400, IF_MATCH_INVALID_BODY);
+            }
+            if (expectedCount != null && countUpdater.getShardConfig().isSharded(companyId)) {
+                Logger.error(79, sub, "If-Match not supported for sharded company");
+                return precomputed(400, IF_MATCH_UNSUPPORTED_BODY);
+            }
+            long retryAfter = rateLimiter == null ? 0 : rateLimiter.acquire(sub, companyId);
+            if (retryAfter > 0) {
+                Logger.error(81, sub, "toggle rate limit exceeded");
+                metrics.count("RateLimited");
+                return rateLimited(retryAfter);
             }
+            metrics.endPhase("Validation");
             lineNum = 71;
             boolean increment = Boolean.parseBoolean(incrementStr);
-            boolean updated = incrementCompanyRecord(companyId, increment);
+            if (hotKeys != null) {
+                hotKeys.record(companyId);
+            }
+            if (fanOut.isConfigured() && isFanOutRequested(event)) {
+                lineNum = 138;
+                return fanOutIncrement(sub, companyId, increment, expectedCount, event, metrics);
+            }
+            if (writeBehind.hasPending()) {
+                writeBehind.drain(countUpdater);
+            }
+            Long count;
+            try {
+                count = incrementCompanyRecord(companyId, increment, expectedCount, metrics);
+            } catch (DynamoDbException e) {
+                if (!e.isThrottlingException() || expectedCount != null
+                        || !writeBehind.append(companyId, increment ? 1 : -1)) {
+                    throw e;
+                }
+                metrics.count("Deferred");
+                return precomputed(202, DEFERRED_BODY);
+            }
+            metrics.endPhase("DynamoDb");
             lineNum = 74;
-            return response(200,"company record updated = " +
-                    updated);
+            return precomputed(200, count == null ? UPDATED_BODY : UPDATED_COUNT_PREFIX + count + "}");
+        } catch (ConditionalCheckFailedException e) {
+            if (e.hasItem() && !e.item().isEmpty()) {
+                Logger.error(lineNum, sub, "boycott_count does not match If-Match");
+                return precomputed(412, STALE_COUNT_PREFIX + BoycottCountUpdater.countOf(e.item()) + "}");
+            }
+            Logger.error(lineNum, sub, "company not found");
+            return precomputed(404, COMPANY_NOT_FOUND_BODY);
         } catch (Exception e) {
             Logger.error(lineNum, sub, e.getMessage());
             return response(500,Map.of("error", "Unexpected server error: " + e.getMessage()) );
         }
     }
+    private static Long expectedCount(Map<String, String> headers) {
+        if (headers == null) {
+            return null;
+        }
+        String value = headers.get("If-Match");
+        if (value == null) {
+            value = headers.get("if-match");
+        }
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        return Long.parseLong(value.replace("\"", "").trim());
+    }
+    void setWriteBehindJournal(WriteBehindJournal writeBehind) {
+        this.writeBehind = writeBehind;
+    }
+    /** Null when HOT_KEY_TRACKING=false; set a listener on it to act on hot companies. */
+    public HotKeyTracker getHotKeyTracker() {
+        return hotKeys;
+    }
+    void setUnknownCompanyCache(UnknownCompanyCache unknownCompanies) {
+        this.unknownCompanies = unknownCompanies;
+    }
+    void setFanOut(BoycottFanOut fanOut) {
+        this.fanOut = fanOut;
+    }
+    /** Where the per-invocation EMF line goes; null turns it off. */
+    void setMetricsOutput(PrintStream metricsOut) {
+        this.metricsOut = metricsOut;
+    }
+    void setToggleRateLimiter(ToggleRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+    /** Merges concurrent increments per company; only for the long-lived server. */
+    void enableWriteCoalescing(long windowMillis, Executor writers) {
+        this.coalescer = new WriteCoalescer(countUpdater, windowMillis, writers);
+    }
+    void disableWriteCoalescing() {
+        WriteCoalescer current = coalescer;
+        coalescer = null;
+        if (current != null) {
+            current.close();
+        }
+    }
+    private static boolean isFanOutRequested(APIGatewayProxyRequestEvent event) {
+        Map<String, String> query = event.getQueryStringParameters();
+        return query != null && "true".equals(query.get("fanout"));
+    }
+    /**
+     * Writes the company and the configured related counters in one
+     * transaction. A failed company condition maps to the same 404 and 412
+     * responses as a single write; any other cancellation is a 409 that names
+     * the failed targets.
+     */
+    private APIGatewayProxyResponseEvent fanOutIncrement(String sub, String companyId, boolean increment,
+                                                         Long expectedCount, APIGatewayProxyRequestEvent event,
+                                                         InvocationMetrics metrics) {
+        Map<String, String> sources = new HashMap<>();
+        if (event.getQueryStringParameters() != null) {
+            sources.putAll(event.getQueryStringParameters());
+        }
+        sources.putAll(event.getPathParameters());
+        sources.put("sub", sub);
+        try {
+            fanOut.apply(companyId, increment ? 1 : -1, expectedCount, sources);
+        } catch (IllegalArgumentException e) {
+            Logger.error(211, sub, e.getMessage());
+            return response(400, new ResponseMessage(400, ERROR_MESSAGE, e.getMessage()));
+        } catch (BoycottFanOut.FanOutCancelledException e) {
+            if (e.retryable()) {
+                metrics.count("FanOutRetryable");
+                Logger.error(214, sub, "fan-out throttled: " + e.getFailures());
+                return response(503, Map.of("message", "fan-out throttled", "failed", e.getFailures()))
+                        .withHeaders(Map.of("Content-Type", "application/json",
+                                "Retry-After", FAN_OUT_RETRY_AFTER_SECONDS));
+            }
+            metrics.conditionalCheckFailed();
+            BoycottFanOut.Failure company = e.failure(BoycottFanOut.COMPANY_TARGET);
+            if (company != null && company.conditionFailed()) {
+                if (company.item() != null && !company.item().isEmpty()) {
+                    Logger.error(218, sub, "boycott_count does not match If-Match");
+                    return precomputed(412, STALE_COUNT_PREFIX + BoycottCountUpdater.countOf(company.item()) + "}");
+                }
+                Logger.error(221, sub, "company not found");
+                unknownCompanies.recordMissing(companyId);
+                return precomputed(404, COMPANY_NOT_FOUND_BODY);
+            }
+            Logger.error(225, sub, "fan-out cancelled: " + e.getFailures());
+            if (!e.conditionFailed()) {
+                return response(500, Map.of("message", "fan-out failed", "failed", e.getFailures()));
+            }
+            return response(409, Map.of("message", "fan-out cancelled", "failed", e.getFailures()));
+        }
+        metrics.count("FanOut");
+        metrics.endPhase("DynamoDb");
+        return precomputed(200, UPDATED_BODY);
+    }
+    private static String toJson(Object body) {
+        try {
+            return new ObjectMapper().writeValueAsString(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    @Override
+    public void beforeCheckpoint(org.crac.Context<? extends Resource> context) {
+        prime();
+    }
+
+    @Override
+    public void afterRestore(org.crac.Context<? extends Resource> context) {
+        // pooled connections from the snapshot are stale, so open a fresh one before the first invocation
+        prime();
+    }
+
+    /**
+     * Loads the JwtUtility, SDK and Jackson code paths and opens a DynamoDB
+     * connection without writing anything: a zero delta for a company id that
+     * does not exist fails its attribute_exists condition. The updater is
+     * called directly, so the rate limiter, hot-key tracker, write-behind
+     * journal and unknown-company cache see no priming traffic.
+     */
+    void prime() {
+        try {
+            APIGatewayProxyRequestEvent event = new APIGatewayProxyRequestEvent();
+            APIGatewayProxyRequestEvent.ProxyRequestContext rc = new APIGatewayProxyRequestEvent.ProxyRequestContext();
+            rc.setAuthorizer(Map.of("claims", Map.of("sub", PRIMING_SUB)));
+            event.setRequestContext(rc);
+            JwtUtility.getSubFromRestEvent(event);
+            try {
+                countUpdater.applyDelta(PRIMING_COMPANY_ID, 0);
+            } catch (ConditionalCheckFailedException expected) {
+                // the priming company never exists
+            }
+            response(400, ERROR_MESSAGE, "priming");
+            response(200, Map.of("results", List.of()));
+        } catch (Exception e) {
+            Logger.error(112, PRIMING_SUB, "priming failed: " + e.getMessage());
+        }
+    }
+    private APIGatewayProxyResponseEvent bulkIncrement(String sub, String body) {
+        try {
+            ToggleRateLimiter limiter = rateLimiter;
+            long[] retryAfter = {0};
+            List<BulkIncrementProcessor.ItemResult> results = bulkProcessor.process(body, companyId -> {
+                long wait = limiter == null ? 0 : limiter.acquire(sub, companyId);
+                retryAfter[0] = Math.max(retryAfter[0], wait);
+                return wait == 0;
+            });
+            if (retryAfter[0] == 0) {
+                return response(200, Map.of("results", results));
+            }
+            Logger.error(85, sub, "toggle rate limit exceeded for bulk items");
+            if (results.stream().allMatch(result -> BulkIncrementProcessor.RATE_LIMITED.equals(result.status()))) {
+                return rateLimited(retryAfter[0]);
+            }
+            // partly applied: report per item and tell the client when to retry the rest
+            return response(200, Map.of("results", results))
+                    .withHeaders(Map.of("Content-Type", "application/json",
+                            "Retry-After", Long.toString(retryAfter[0])));
+        } catch (IllegalArgumentException e) {
+            Logger.error(87, sub, e.getMessage());
+            ResponseMessage message = new ResponseMessage(400,
+                    ERROR_MESSAGE, e.getMessage());
+            return response(400,message);
+        }
+    }
+    private static APIGatewayProxyResponseEvent precomputed(int status, String body) {
+        return new APIGatewayProxyResponseEvent()
+                .withStatusCode(status)
+                .withHeaders(JSON_HEADERS)
+                .withBody(body);
+    }
+    private static APIGatewayProxyResponseEvent rateLimited(long retryAfterSeconds) {
+        return new APIGatewayProxyResponseEvent()
+                .withStatusCode(429)
+                .withHeaders(Map.of("Content-Type", "application/json",
+                        "Retry-After", Long.toString(retryAfterSeconds)))
+                .withBody(RATE_LIMITED_BODY);
+    }
     private APIGatewayProxyResponseEvent response(int status, Object body) {
         String responseBody = null;
         try {
@@ -88,36 +381,42 @@ public class IncrementCompanyBoycottHandler implements RequestHandler<APIGateway
         }
         return new APIGatewayProxyResponseEvent()
                 .withStatusCode(status)
-                .withHeaders(Map.of("Content-Type", "application/json"))
+                .withHeaders(JSON_HEADERS)
                 .withBody(responseBody);
     }
-    private boolean incrementCompanyRecord(String companyId, boolean increment) {
+    /**
+     * Returns the post-update boycott_count, or null for sharded companies
+     * where only the shard item's count is known.
+     */
+    private Long incrementCompanyRecord(String companyId, boolean increment, Long expectedCount,
+                                        InvocationMetrics metrics) {
         try {
             int adjustment = increment ? 1 : -1;
-
-            Map<String, AttributeValue> key = Map.of("company_id", AttributeValue.fromS(companyId));
-
-            Map<String, AttributeValue> expressionAttributeValues = Map.of(
-                    ":delta", AttributeValue.fromN(Integer.toString(adjustment))
-            );
-
-            UpdateItemRequest updateRequest = UpdateItemRequest.builder()
-                    .tableName(TABLE_NAME)
-                    .key(key)
-                    .updateExpression("SET boycott_count = if_not_exists(boycott_count, :zero) + :delta")
-                    .expressionAttributeValues(new HashMap<>(expressionAttributeValues) {{
-                        put(":zero", AttributeValue.fromN("0"));
-                    }})
-                    .conditionExpression("attribute_exists(company_id)")
-                    .build();
-
-            dynamoDb.updateItem(updateRequest);
-            return true;
+            WriteCoalescer merging = coalescer;
+            UpdateItemResponse result;
+            if (expectedCount != null) {
+                result = countUpdater.applyDelta(companyId, adjustment, expectedCount);
+            } else if (merging != null) {
+                result = merging.apply(companyId, adjustment);
+            } else {
+                result = countUpdater.applyDelta(companyId, adjustment);
+            }
+            if (result != null && result.consumedCapacity() != null) {
+                metrics.consumedCapacity(result.consumedCapacity().capacityUnits());
+            }
+            return countUpdater.getShardConfig().isSharded(companyId) ? null : BoycottCountUpdater.updatedCount(result);
 
         } catch (ConditionalCheckFailedException e) {
-            System.err.println("Company not found: " + companyId);
+            metrics.conditionalCheckFailed();
+            if (!e.hasItem() || e.item().isEmpty()) {
+                System.err.println("Company not found: " + companyId);
+                unknownCompanies.recordMissing(companyId);
+            }
             throw e;
         } catch (DynamoDbException e) {
+            if (e.isThrottlingException()) {
+                metrics.throttled();
+            }
             e.printStackTrace();
             throw e;
         }
@@ -135,7 +434,7 @@ public class IncrementCompanyBoycottHandler implements RequestHandler<APIGateway
         }
         return new APIGatewayProxyResponseEvent()
                 .withStatusCode(status)
-                .withHeaders(Map.of("Content-Type", "application/json"))
+                .withHeaders(JSON_HEADERS)
                 .withBody(responseBody);
     }
 
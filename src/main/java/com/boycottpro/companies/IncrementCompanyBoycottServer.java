@@ -0,0 +1,231 @@
+package com.boycottpro.companies;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.boycottpro.utilities.Logger;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Embedded HTTP server for container deployments. It runs the same
+ * {@link IncrementCompanyBoycottHandler} logic outside Lambda:
+ *
+ *   POST /companies/{company_id}/{increment}   single increment
+ *   POST /companies                            bulk body
+ *   GET  /health
+ *
+ * Each request runs on its own virtual thread when the JVM has them (21+),
+ * otherwise on a cached pool, because request threads block in
+ * {@link WriteCoalescer#apply} for the window plus the merged write and a
+ * fixed pool would cap how many increments one window can merge. Only the
+ * coalesced writes run on a bounded pool of COALESCE_WRITER_THREADS
+ * (default 16). Increments are
+ * merged per company over COALESCE_WINDOW_MILLIS (default 10, 0 disables)
+ * by a {@link WriteCoalescer}.
+ *
+ * The server does no authentication of its own. It trusts the caller's sub
+ * from the SERVER_SUB_HEADER request header (default x-amzn-oidc-identity),
+ * so it must only be reachable through an authenticating proxy, such as an
+ * ALB with OIDC or Cognito authentication, that sets that header and strips
+ * any copy sent by the client. Never expose the port directly.
+ */
+public class IncrementCompanyBoycottServer {
+
+    static final String BASE_PATH = "/companies";
+    static final String DEFAULT_SUB_HEADER = "x-amzn-oidc-identity";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final IncrementCompanyBoycottHandler handler;
+    private final String subHeader;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService ticker;
+    private final HttpServer server;
+
+    public IncrementCompanyBoycottServer(IncrementCompanyBoycottHandler handler, InetSocketAddress address,
+                                         String subHeader) throws IOException {
+        this.handler = handler;
+        this.subHeader = subHeader;
+        this.executor = newPerTaskExecutor("http-request");
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hot-key-window");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(address, 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+    }
+
+    public static void main(String[] args) throws IOException {
+        IncrementCompanyBoycottServer server = fromEnv(new IncrementCompanyBoycottHandler(),
+                DynamoDbClients.envInt("SERVER_PORT", 8080));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(2)));
+        server.start();
+        System.out.println("listening on port " + server.port());
+    }
+
+    /** The server main() runs, configured from the environment around the given handler. */
+    static IncrementCompanyBoycottServer fromEnv(IncrementCompanyBoycottHandler handler, int port) throws IOException {
+        int window = DynamoDbClients.envInt("COALESCE_WINDOW_MILLIS", 10);
+        if (window > 0) {
+            handler.enableWriteCoalescing(window,
+                    newBoundedExecutor("coalesced-write", DynamoDbClients.envInt("COALESCE_WRITER_THREADS", 16)));
+        }
+        String subHeader = System.getenv("SERVER_SUB_HEADER");
+        return new IncrementCompanyBoycottServer(handler, new InetSocketAddress(port),
+                subHeader == null || subHeader.isBlank() ? DEFAULT_SUB_HEADER : subHeader);
+    }
+
+    public void start() {
+        server.start();
+        HotKeyTracker hotKeys = handler.getHotKeyTracker();
+        if (hotKeys != null) {
+            // idle periods still end the window and emit its top keys
+            ticker.scheduleAtFixedRate(hotKeys::rollWindowIfDue, 1, 1, TimeUnit.SECONDS);
+        }
+    }
+
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        handler.disableWriteCoalescing();
+        ticker.shutdownNow();
+        executor.shutdown();
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /** One virtual thread per task on Java 21+, resolved reflectively so the code still builds for 17. */
+    static ExecutorService newPerTaskExecutor(String name) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    static ExecutorService newBoundedExecutor(String name, int threads) {
+        return Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            if (path.equals("/health")) {
+                send(exchange, 200, Map.of(), "ok");
+                return;
+            }
+            if (!(path.equals(BASE_PATH) || path.startsWith(BASE_PATH + "/"))) {
+                send(exchange, 404, Map.of(), "");
+                return;
+            }
+            if (!method.equals("POST") && !method.equals("PUT")) {
+                send(exchange, 405, Map.of("Allow", "POST, PUT"), "");
+                return;
+            }
+            APIGatewayProxyResponseEvent response = handler.handleRequest(toEvent(exchange, path), null);
+            send(exchange, response.getStatusCode(),
+                    response.getHeaders() == null ? Map.of() : response.getHeaders(), response.getBody());
+        } catch (RuntimeException e) {
+            Logger.error(117, null, "server request failed: " + e.getMessage());
+            sendError(exchange, e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private APIGatewayProxyRequestEvent toEvent(HttpExchange exchange, String path) throws IOException {
+        APIGatewayProxyRequestEvent event = new APIGatewayProxyRequestEvent();
+        String sub = exchange.getRequestHeaders().getFirst(subHeader);
+        if (sub != null && !sub.isBlank()) {
+            APIGatewayProxyRequestEvent.ProxyRequestContext rc = new APIGatewayProxyRequestEvent.ProxyRequestContext();
+            rc.setAuthorizer(Map.of("claims", Map.of("sub", sub)));
+            event.setRequestContext(rc);
+        }
+        Map<String, String> pathParams = new HashMap<>(4);
+        String[] segments = path.substring(BASE_PATH.length()).split("/");
+        // segments[0] is the empty string before the first slash
+        if (segments.length > 1 && !segments[1].isEmpty()) {
+            pathParams.put("company_id", URLDecoder.decode(segments[1], StandardCharsets.UTF_8));
+        }
+        if (segments.length > 2 && !segments[2].isEmpty()) {
+            pathParams.put("increment", segments[2]);
+        }
+        event.setPathParameters(pathParams);
+        String ifMatch = exchange.getRequestHeaders().getFirst("If-Match");
+        if (ifMatch != null) {
+            event.setHeaders(Map.of("If-Match", ifMatch));
+        }
+        event.setQueryStringParameters(query(exchange.getRequestURI().getRawQuery()));
+        try (InputStream body = exchange.getRequestBody()) {
+            byte[] bytes = body.readAllBytes();
+            if (bytes.length > 0) {
+                event.setBody(new String(bytes, StandardCharsets.UTF_8));
+            }
+        }
+        return event;
+    }
+
+    private static Map<String, String> query(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static void sendError(HttpExchange exchange, RuntimeException e) {
+        if (exchange.getResponseCode() != -1) {
+            // the status line is already out; closing the exchange is all that is left
+            return;
+        }
+        try {
+            send(exchange, 500, Map.of("Content-Type", "application/json"),
+                    MAPPER.writeValueAsString(Map.of("error", "Unexpected server error: " + e.getMessage())));
+        } catch (IOException ioe) {
+            Logger.error(131, null, "could not send error response: " + ioe.getMessage());
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, Map<String, String> headers, String body)
+            throws IOException {
+        headers.forEach((name, value) -> exchange.getResponseHeaders().set(name, value));
+        byte[] bytes = body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+}
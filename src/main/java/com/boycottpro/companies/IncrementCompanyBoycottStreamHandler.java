@@ -0,0 +1,156 @@
+package com.boycottpro.companies;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stream entry point that reads only the fields the handler needs from a
+ * REST (v1) or HTTP API (v2) proxy event and writes the proxy response
+ * directly, instead of having the runtime bind the whole event to POJOs.
+ */
+public class IncrementCompanyBoycottStreamHandler implements RequestStreamHandler {
+
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final Set<String> OBJECTS = Set.of(
+            "pathParameters",
+            "queryStringParameters",
+            "headers",
+            "requestContext",
+            "requestContext.authorizer",
+            "requestContext.authorizer.claims",
+            "requestContext.authorizer.jwt",
+            "requestContext.authorizer.jwt.claims");
+
+    private final IncrementCompanyBoycottHandler handler;
+
+    public IncrementCompanyBoycottStreamHandler() {
+        this(new IncrementCompanyBoycottHandler());
+    }
+
+    public IncrementCompanyBoycottStreamHandler(IncrementCompanyBoycottHandler handler) {
+        this.handler = handler;
+    }
+
+    private static final class Fields {
+        String companyId;
+        String increment;
+        String ifMatch;
+        String body;
+        boolean base64;
+        String sub;
+        // REST (v1) and HTTP API (v2) payloads both carry the decoded query here
+        Map<String, String> query;
+
+        void accept(String path, String value) {
+            switch (path) {
+                case "pathParameters.company_id" -> companyId = value;
+                case "pathParameters.increment" -> increment = value;
+                case "headers.If-Match", "headers.if-match" -> ifMatch = value;
+                case "body" -> body = value;
+                case "isBase64Encoded" -> base64 = "true".equals(value);
+                case "requestContext.authorizer.claims.sub", "requestContext.authorizer.jwt.claims.sub" -> sub = value;
+                default -> {
+                    if (path.startsWith("queryStringParameters.")) {
+                        if (query == null) {
+                            query = new HashMap<>(4);
+                        }
+                        query.put(path.substring("queryStringParameters.".length()), value);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void handleRequest(InputStream input, OutputStream output, Context context) throws IOException {
+        Fields fields = new Fields();
+        try (JsonParser parser = JSON.createParser(input)) {
+            if (parser.nextToken() == JsonToken.START_OBJECT) {
+                readObject(parser, "", fields);
+            }
+        }
+        APIGatewayProxyResponseEvent response = handler.handleRequest(toEvent(fields), context);
+        writeResponse(response, output);
+    }
+
+    private static void readObject(JsonParser parser, String path, Fields fields) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken token = parser.nextToken();
+            String child = path.isEmpty() ? name : path + "." + name;
+            if (token == JsonToken.START_OBJECT) {
+                if (OBJECTS.contains(child)) {
+                    readObject(parser, child, fields);
+                } else {
+                    parser.skipChildren();
+                }
+            } else if (token == JsonToken.START_ARRAY) {
+                parser.skipChildren();
+            } else if (token != JsonToken.VALUE_NULL) {
+                fields.accept(child, parser.getText());
+            }
+        }
+    }
+
+    private static APIGatewayProxyRequestEvent toEvent(Fields fields) {
+        APIGatewayProxyRequestEvent event = new APIGatewayProxyRequestEvent();
+        if (fields.sub != null) {
+            APIGatewayProxyRequestEvent.ProxyRequestContext rc = new APIGatewayProxyRequestEvent.ProxyRequestContext();
+            rc.setAuthorizer(Map.of("claims", Map.of("sub", fields.sub)));
+            event.setRequestContext(rc);
+        }
+        Map<String, String> pathParams = new HashMap<>(4);
+        if (fields.companyId != null) {
+            pathParams.put("company_id", fields.companyId);
+        }
+        if (fields.increment != null) {
+            pathParams.put("increment", fields.increment);
+        }
+        event.setPathParameters(pathParams);
+        if (fields.query != null) {
+            event.setQueryStringParameters(fields.query);
+        }
+        if (fields.ifMatch != null) {
+            event.setHeaders(Map.of("If-Match", fields.ifMatch));
+        }
+        if (fields.body != null) {
+            event.setBody(fields.base64
+                    ? new String(Base64.getDecoder().decode(fields.body), StandardCharsets.UTF_8)
+                    : fields.body);
+        }
+        return event;
+    }
+
+    private static void writeResponse(APIGatewayProxyResponseEvent response, OutputStream output) throws IOException {
+        try (JsonGenerator json = JSON.createGenerator(output, JsonEncoding.UTF8)) {
+            json.writeStartObject();
+            json.writeNumberField("statusCode", response.getStatusCode());
+            json.writeObjectFieldStart("headers");
+            if (response.getHeaders() != null) {
+                for (Map.Entry<String, String> header : response.getHeaders().entrySet()) {
+                    json.writeStringField(header.getKey(), header.getValue());
+                }
+            }
+            json.writeEndObject();
+            json.writeStringField("body", response.getBody());
+            json.writeBooleanField("isBase64Encoded", false);
+            json.writeEndObject();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.boycottpro.companies;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Per-invocation phase timings and outcome counters, written to stdout as a
+ * single CloudWatch Embedded Metric Format line. Set METRICS_ENABLED=false
+ * to turn emission off; tests and benchmarks pass a null stream instead.
+ */
+public class InvocationMetrics {
+
+    static final String NAMESPACE = "BoycottPro/IncrementCompanyBoycott";
+    private static final AtomicBoolean COLD_START = new AtomicBoolean(true);
+    static final boolean ENABLED = !"false".equalsIgnoreCase(System.getenv("METRICS_ENABLED"));
+    static final String FUNCTION_NAME = functionName();
+
+    private final boolean coldStart;
+    private final long startNanos;
+    private long markNanos;
+    private final List<String> names = new ArrayList<>(12);
+    private final List<String> units = new ArrayList<>(12);
+    private final List<Double> values = new ArrayList<>(12);
+
+    InvocationMetrics(boolean coldStart) {
+        this.coldStart = coldStart;
+        this.startNanos = System.nanoTime();
+        this.markNanos = startNanos;
+    }
+
+    public static InvocationMetrics start() {
+        return new InvocationMetrics(COLD_START.getAndSet(false));
+    }
+
+    /** Records the time since the previous phase ended as {@code <phase>Ms}. */
+    public void endPhase(String phase) {
+        long now = System.nanoTime();
+        put(phase + "Ms", "Milliseconds", millis(now - markNanos));
+        markNanos = now;
+    }
+
+    public void status(int statusCode) {
+        count("Status" + statusCode);
+    }
+
+    public void conditionalCheckFailed() {
+        count("ConditionalCheckFailed");
+    }
+
+    public void throttled() {
+        count("Throttled");
+    }
+
+    public void consumedCapacity(Double capacityUnits) {
+        if (capacityUnits != null) {
+            put("ConsumedWriteCapacity", "Count", capacityUnits);
+        }
+    }
+
+    public void count(String name) {
+        put(name, "Count", 1);
+    }
+
+    public void emit() {
+        emit(ENABLED ? System.out : null);
+    }
+
+    /** Writes the EMF line to {@code out}; a null stream emits nothing. */
+    void emit(PrintStream out) {
+        if (out != null) {
+            out.println(toEmf(System.currentTimeMillis()));
+        }
+    }
+
+    String toEmf(long timestampMillis) {
+        put("TotalMs", "Milliseconds", millis(System.nanoTime() - startNanos));
+        put("ColdStart", "Count", coldStart ? 1 : 0);
+        StringBuilder json = new StringBuilder(512);
+        json.append("{\"_aws\":{\"Timestamp\":").append(timestampMillis)
+                .append(",\"CloudWatchMetrics\":[{\"Namespace\":\"").append(NAMESPACE)
+                .append("\",\"Dimensions\":[[\"FunctionName\"]],\"Metrics\":[");
+        for (int i = 0; i < names.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"Name\":\"").append(names.get(i))
+                    .append("\",\"Unit\":\"").append(units.get(i)).append("\"}");
+        }
+        json.append("]}]},\"FunctionName\":\"").append(FUNCTION_NAME).append('"');
+        for (int i = 0; i < names.size(); i++) {
+            json.append(",\"").append(names.get(i)).append("\":").append(values.get(i));
+        }
+        return json.append('}').toString();
+    }
+
+    private void put(String name, String unit, double value) {
+        int index = names.indexOf(name);
+        if (index >= 0) {
+            values.set(index, values.get(index) + value);
+            return;
+        }
+        names.add(name);
+        units.add(unit);
+        values.add(value);
+    }
+
+    private static double millis(long nanos) {
+        return (nanos / 1000) / 1000.0;
+    }
+
+    private static String functionName() {
+        String name = System.getenv("AWS_LAMBDA_FUNCTION_NAME");
+        return name == null || name.isBlank() ? "local" : name.replace("\"", "");
+    }
+}
@@ -0,0 +1,160 @@
+package com.boycottpro.companies;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-segment results of a {@link BoycottRecountJob} run, so a run that
+ * stops early resumes without rescanning finished segments. A segment cut
+ * off part way keeps its counts so far and the key its scan resumes from.
+ * Each segment is
+ * a header item plus chunk items of at most CHUNK_SIZE company counts, to
+ * stay under the 400 KB item limit. The header is written last, so a
+ * segment only counts as done once all of its chunks are stored.
+ *
+ * The same layout holds the companies snapshot taken when a run starts and
+ * the drift found by the last completed run, which the next run needs to
+ * confirm before correcting it.
+ */
+public class RecountCheckpoints {
+
+    public static final String DEFAULT_TABLE = "boycott_recount_checkpoints";
+    static final int CHUNK_SIZE = 5000;
+    static final String PENDING_DRIFT_ID = "pending-drift";
+    private static final long RETENTION_DAYS = 7;
+
+    private final DynamoDbClient dynamoDb;
+    private final String tableName;
+
+    public RecountCheckpoints(DynamoDbClient dynamoDb, String tableName) {
+        this.dynamoDb = dynamoDb;
+        this.tableName = tableName;
+    }
+
+    /** Saved counts for the segment, or null if it has not finished in this run. */
+    public Map<String, long[]> load(String runId, int segment) {
+        return loadCounts(segmentId(runId, segment));
+    }
+
+    public void save(String runId, int segment, Map<String, long[]> counts) {
+        saveCounts(segmentId(runId, segment), counts);
+    }
+
+    /** Counts of a segment stopped part way, the key its scan resumes from, and the pages read so far. */
+    public record Partial(Map<String, long[]> counts, Map<String, AttributeValue> startKey, int pages) {
+    }
+
+    /** Where an unfinished segment stopped, or null if it has not been started in this run. */
+    public Partial loadPartial(String runId, int segment) {
+        Map<String, AttributeValue> pointer = get(segmentId(runId, segment) + "#partial");
+        if (pointer == null) {
+            return null;
+        }
+        Map<String, long[]> counts = loadCounts(pointer.get("counts_id").s());
+        return counts == null ? null : new Partial(counts, pointer.get("start_key").m(),
+                Integer.parseInt(pointer.get("pages").n()));
+    }
+
+    /**
+     * The counts are stored under the page count, so they never overwrite
+     * the previous save, and the pointer to them is written last.
+     */
+    public void savePartial(String runId, int segment, Partial partial) {
+        String countsId = segmentId(runId, segment) + "#partial-" + partial.pages();
+        saveCounts(countsId, partial.counts());
+        put(segmentId(runId, segment) + "#partial", Map.of(
+                "counts_id", AttributeValue.fromS(countsId),
+                "start_key", AttributeValue.fromM(partial.startKey()),
+                "pages", AttributeValue.fromN(Integer.toString(partial.pages()))));
+    }
+
+    /** boycott_count of every company when the run started, or null if not taken yet. */
+    public Map<String, long[]> loadSnapshot(String runId) {
+        return loadCounts(runId + "#snapshot");
+    }
+
+    public void saveSnapshot(String runId, Map<String, long[]> counts) {
+        saveCounts(runId + "#snapshot", counts);
+    }
+
+    /** Drift per company left uncorrected by the last completed run. */
+    public Map<String, long[]> loadPendingDrift() {
+        Map<String, long[]> drift = loadCounts(PENDING_DRIFT_ID);
+        return drift == null ? new HashMap<>() : drift;
+    }
+
+    public void savePendingDrift(Map<String, long[]> drift) {
+        saveCounts(PENDING_DRIFT_ID, drift);
+    }
+
+    private Map<String, long[]> loadCounts(String id) {
+        Map<String, AttributeValue> header = get(id);
+        if (header == null) {
+            return null;
+        }
+        Map<String, long[]> counts = new HashMap<>();
+        int chunks = Integer.parseInt(header.get("chunks").n());
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            Map<String, AttributeValue> item = get(id + "#" + chunk);
+            if (item == null) {
+                return null;
+            }
+            item.get("counts").m().forEach((companyId, count) ->
+                    counts.put(companyId, new long[]{Long.parseLong(count.n())}));
+        }
+        return counts;
+    }
+
+    private void saveCounts(String id, Map<String, long[]> counts) {
+        int chunk = 0;
+        Map<String, AttributeValue> values = new HashMap<>();
+        for (Map.Entry<String, long[]> entry : counts.entrySet()) {
+            values.put(entry.getKey(), AttributeValue.fromN(Long.toString(entry.getValue()[0])));
+            if (values.size() == CHUNK_SIZE) {
+                put(id + "#" + chunk++, Map.of("counts", AttributeValue.fromM(values)));
+                values = new HashMap<>();
+            }
+        }
+        if (!values.isEmpty() || chunk == 0) {
+            put(id + "#" + chunk++, Map.of("counts", AttributeValue.fromM(values)));
+        }
+        put(id, Map.of("chunks", AttributeValue.fromN(Integer.toString(chunk))));
+    }
+
+    public boolean isComplete(String runId) {
+        return get(runId + "#complete") != null;
+    }
+
+    public void markComplete(String runId) {
+        put(runId + "#complete", Map.of());
+    }
+
+    private static String segmentId(String runId, int segment) {
+        return runId + "#segment-" + segment;
+    }
+
+    private Map<String, AttributeValue> get(String checkpointId) {
+        Map<String, AttributeValue> item = dynamoDb.getItem(GetItemRequest.builder()
+                .tableName(tableName)
+                .key(Map.of("checkpoint_id", AttributeValue.fromS(checkpointId)))
+                .consistentRead(true)
+                .build()).item();
+        return item == null || item.isEmpty() ? null : item;
+    }
+
+    private void put(String checkpointId, Map<String, AttributeValue> attributes) {
+        Map<String, AttributeValue> item = new HashMap<>(attributes);
+        item.put("checkpoint_id", AttributeValue.fromS(checkpointId));
+        // DynamoDB TTL removes old runs
+        item.put("expires_at", AttributeValue.fromN(Long.toString(
+                Instant.now().plus(RETENTION_DAYS, ChronoUnit.DAYS).getEpochSecond())));
+        dynamoDb.putItem(PutItemRequest.builder().tableName(tableName).item(item).build());
+    }
+}
@@ -0,0 +1,42 @@
+package com.boycottpro.companies;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.ScheduledEvent;
+import com.boycottpro.utilities.Logger;
+
+/**
+ * Scheduled entry point that folds the shard items of every sharded company
+ * back into companies.boycott_count, and prunes their expired time buckets.
+ */
+public class ShardRollupHandler implements RequestHandler<ScheduledEvent, String> {
+
+    private final BoycottCountUpdater countUpdater;
+
+    public ShardRollupHandler() {
+        this(new BoycottCountUpdater(DynamoDbClients.syncClient()));
+    }
+
+    public ShardRollupHandler(BoycottCountUpdater countUpdater) {
+        this.countUpdater = countUpdater;
+    }
+
+    @Override
+    public String handleRequest(ScheduledEvent event, Context context) {
+        int rolledUp = 0;
+        int failed = 0;
+        for (String companyId : countUpdater.getShardConfig().shardedCompanies()) {
+            try {
+                long moved = countUpdater.rollup(companyId);
+                countUpdater.pruneExpiredBuckets(companyId);
+                if (moved != 0) {
+                    rolledUp++;
+                }
+            } catch (Exception e) {
+                failed++;
+                Logger.error(36, companyId, "shard rollup failed: " + e.getMessage());
+            }
+        }
+        return "rolled up = " + rolledUp + ", failed = " + failed;
+    }
+}
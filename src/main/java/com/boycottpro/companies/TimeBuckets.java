@@ -0,0 +1,160 @@
+package com.boycottpro.companies;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hourly and daily boycott deltas kept in the boycott_hourly and
+ * boycott_daily map attributes of the company item, keyed yyyyMMddHH and
+ * yyyyMMdd (UTC). They are updated in the same UpdateItem as boycott_count.
+ * The bucket that falls out of the retention window is removed in the same
+ * write. Buckets for hours or days without a write at that later moment are
+ * left behind, so reads skip every key at or before the cutoff and
+ * {@link BoycottCountUpdater#pruneExpiredBuckets(String)} removes them.
+ *
+ * Transactional writes (fan-out and atomic bulk) do not touch the buckets,
+ * because a missing bucket map would cancel the whole transaction.
+ */
+public class TimeBuckets {
+
+    static final String UPDATE_CLAUSES =
+            ", boycott_hourly.#hour = if_not_exists(boycott_hourly.#hour, :zero) + :delta"
+            + ", boycott_daily.#day = if_not_exists(boycott_daily.#day, :zero) + :delta"
+            + " REMOVE boycott_hourly.#expiredHour, boycott_daily.#expiredDay";
+    private static final DateTimeFormatter HOUR = DateTimeFormatter.ofPattern("yyyyMMddHH").withZone(ZoneOffset.UTC);
+    private static final DateTimeFormatter DAY = DateTimeFormatter.ofPattern("yyyyMMdd").withZone(ZoneOffset.UTC);
+    // keeps a prune request well under the 4 KB expression limit
+    static final int MAX_PRUNED_KEYS = 100;
+    private static final Map<String, AttributeValue> EMPTY_MAPS = Map.of(":empty", AttributeValue.fromM(Map.of()));
+
+    private final Clock clock;
+    private final int hourlyRetention;
+    private final int dailyRetention;
+    private volatile CachedNames cached;
+
+    private record CachedNames(long hour, Map<String, String> names) {
+    }
+
+    public TimeBuckets(Clock clock, int hourlyRetention, int dailyRetention) {
+        this.clock = clock;
+        this.hourlyRetention = Math.max(1, hourlyRetention);
+        this.dailyRetention = Math.max(1, dailyRetention);
+    }
+
+    /** Returns null unless BOYCOTT_TIME_BUCKETS=true. */
+    public static TimeBuckets fromEnv() {
+        if (!Boolean.parseBoolean(System.getenv("BOYCOTT_TIME_BUCKETS"))) {
+            return null;
+        }
+        return new TimeBuckets(Clock.systemUTC(),
+                DynamoDbClients.envInt("BOYCOTT_HOURLY_RETENTION", 48),
+                DynamoDbClients.envInt("BOYCOTT_DAILY_RETENTION", 30));
+    }
+
+    public static String hourKey(Instant instant) {
+        return HOUR.format(instant);
+    }
+
+    public static String dayKey(Instant instant) {
+        return DAY.format(instant);
+    }
+
+    /** Attribute names for the current hour; rebuilt once per hour. */
+    Map<String, String> attributeNames() {
+        Instant now = clock.instant();
+        long hour = now.getEpochSecond() / 3600;
+        CachedNames current = cached;
+        if (current == null || current.hour() != hour) {
+            current = new CachedNames(hour, Map.of(
+                    "#hour", hourKey(now),
+                    "#day", dayKey(now),
+                    "#expiredHour", hourKey(now.minus(hourlyRetention, ChronoUnit.HOURS)),
+                    "#expiredDay", dayKey(now.minus(dailyRetention, ChronoUnit.DAYS))));
+            cached = current;
+        }
+        return current.names();
+    }
+
+    /** True for an hourly key at or before the retention cutoff. */
+    boolean isExpiredHour(String hour) {
+        return hour.compareTo(attributeNames().get("#expiredHour")) <= 0;
+    }
+
+    boolean isExpiredDay(String day) {
+        return day.compareTo(attributeNames().get("#expiredDay")) <= 0;
+    }
+
+    /** Expired hourly and daily keys of an item, as "boycott_hourly"/"boycott_daily" paths. */
+    List<String[]> expiredPaths(Map<String, AttributeValue> item) {
+        List<String[]> paths = new ArrayList<>();
+        if (item.containsKey("boycott_hourly")) {
+            for (String hour : item.get("boycott_hourly").m().keySet()) {
+                if (isExpiredHour(hour)) {
+                    paths.add(new String[]{"boycott_hourly", hour});
+                }
+            }
+        }
+        if (item.containsKey("boycott_daily")) {
+            for (String day : item.get("boycott_daily").m().keySet()) {
+                if (isExpiredDay(day)) {
+                    paths.add(new String[]{"boycott_daily", day});
+                }
+            }
+        }
+        return paths;
+    }
+
+    /** Removes up to MAX_PRUNED_KEYS bucket keys from one item. */
+    static UpdateItemRequest prune(String tableName, Map<String, AttributeValue> key, List<String[]> paths) {
+        StringBuilder expression = new StringBuilder("REMOVE ");
+        Map<String, String> names = new HashMap<>();
+        for (int i = 0; i < paths.size() && i < MAX_PRUNED_KEYS; i++) {
+            if (i > 0) {
+                expression.append(", ");
+            }
+            expression.append(paths.get(i)[0]).append(".#k").append(i);
+            names.put("#k" + i, paths.get(i)[1]);
+        }
+        return UpdateItemRequest.builder()
+                .tableName(tableName)
+                .key(key)
+                .updateExpression(expression.toString())
+                .conditionExpression(BoycottCountUpdater.EXISTS_CONDITION)
+                .expressionAttributeNames(names)
+                .build();
+    }
+
+    /** True when an update failed because the bucket maps do not exist yet. */
+    static boolean isMissingMap(DynamoDbException e) {
+        return e.awsErrorDetails() != null
+                && "ValidationException".equals(e.awsErrorDetails().errorCode())
+                && e.getMessage() != null
+                && e.getMessage().contains("document path");
+    }
+
+    /** Creates empty bucket maps on an item that predates time buckets. */
+    static UpdateItemRequest initializeMaps(UpdateItemRequest failed) {
+        UpdateItemRequest.Builder init = UpdateItemRequest.builder()
+                .tableName(failed.tableName())
+                .key(failed.key())
+                .updateExpression("SET boycott_hourly = if_not_exists(boycott_hourly, :empty), "
+                        + "boycott_daily = if_not_exists(boycott_daily, :empty)")
+                .expressionAttributeValues(EMPTY_MAPS);
+        if (failed.conditionExpression() != null) {
+            // never create a company item that does not exist
+            init.conditionExpression(BoycottCountUpdater.EXISTS_CONDITION);
+        }
+        return init.build();
+    }
+}
@@ -0,0 +1,178 @@
+package com.boycottpro.companies;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValuesOnConditionCheckFailure;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket per sub and company_id that limits how often one user can
+ * toggle a boycott. The in-memory tier is a bounded LRU of buckets and
+ * costs no network call. When TOGGLE_RATE_TABLE is set, the same bucket is
+ * also kept in DynamoDB (tokens plus the time of the last refill) and shared
+ * by every instance; each take is a conditional write on the state that was
+ * read, so concurrent instances cannot spend the same token. The shared
+ * bucket is only consulted once the local one falls below half capacity, so
+ * well-behaved users never pay the extra round trips. The shared tier fails
+ * open: if it is unavailable, the local decision stands.
+ */
+public class ToggleRateLimiter {
+
+    // tokens are kept in 1/60000ths so a per-minute refill is exact per millisecond
+    private static final long TOKEN = 60000;
+    static final int SHARED_ATTEMPTS = 3;
+
+    private final int capacity;
+    private final int perMinute;
+    private final int maxEntries;
+    private final LongSupplier clock;
+    private final DynamoDbClient dynamoDb;
+    private final String sharedTable;
+    private final LinkedHashMap<String, Bucket> buckets;
+
+    private static final class Bucket {
+        long tokens;
+        long updatedAt;
+
+        Bucket(long tokens, long updatedAt) {
+            this.tokens = tokens;
+            this.updatedAt = updatedAt;
+        }
+    }
+
+    public ToggleRateLimiter(int capacity, int perMinute, int maxEntries, DynamoDbClient dynamoDb, String sharedTable) {
+        this(capacity, perMinute, maxEntries, dynamoDb, sharedTable, System::currentTimeMillis);
+    }
+
+    ToggleRateLimiter(int capacity, int perMinute, int maxEntries, DynamoDbClient dynamoDb, String sharedTable,
+                      LongSupplier clock) {
+        this.capacity = Math.max(1, capacity);
+        this.perMinute = Math.max(1, perMinute);
+        this.maxEntries = maxEntries;
+        this.dynamoDb = dynamoDb;
+        this.sharedTable = sharedTable;
+        this.clock = clock;
+        this.buckets = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Bucket> eldest) {
+                return size() > ToggleRateLimiter.this.maxEntries;
+            }
+        };
+    }
+
+    /** Returns null when TOGGLE_RATE_LIMIT=false. */
+    public static ToggleRateLimiter fromEnv(DynamoDbClient dynamoDb) {
+        if ("false".equalsIgnoreCase(System.getenv("TOGGLE_RATE_LIMIT"))) {
+            return null;
+        }
+        String table = System.getenv("TOGGLE_RATE_TABLE");
+        return new ToggleRateLimiter(
+                DynamoDbClients.envInt("TOGGLE_RATE_CAPACITY", 10),
+                DynamoDbClients.envInt("TOGGLE_RATE_PER_MINUTE", 30),
+                DynamoDbClients.envInt("TOGGLE_RATE_CACHE_SIZE", 10000),
+                dynamoDb,
+                table == null || table.isBlank() ? null : table);
+    }
+
+    /**
+     * Takes a token for this toggle. Returns 0 when it is allowed, otherwise
+     * the number of seconds to wait before retrying.
+     */
+    public long acquire(String sub, String companyId) {
+        String key = sub + "#" + companyId;
+        long now = clock.getAsLong();
+        long full = capacity * TOKEN;
+        long remaining;
+        synchronized (this) {
+            Bucket bucket = buckets.get(key);
+            if (bucket == null) {
+                bucket = new Bucket(full, now);
+                buckets.put(key, bucket);
+            }
+            bucket.tokens = refill(bucket.tokens, bucket.updatedAt, now);
+            bucket.updatedAt = now;
+            if (bucket.tokens < TOKEN) {
+                return retryAfter(bucket.tokens);
+            }
+            bucket.tokens -= TOKEN;
+            remaining = bucket.tokens;
+        }
+        if (sharedTable != null && remaining * 2 < full) {
+            return acquireShared(key, now);
+        }
+        return 0;
+    }
+
+    private long refill(long tokens, long updatedAt, long now) {
+        return Math.min(capacity * TOKEN, tokens + Math.max(0, now - updatedAt) * perMinute);
+    }
+
+    private long retryAfter(long tokens) {
+        long waitMillis = (TOKEN - tokens + perMinute - 1) / perMinute;
+        return Math.max(1, (waitMillis + 999) / 1000);
+    }
+
+    private long acquireShared(String key, long now) {
+        Map<String, AttributeValue> itemKey = Map.of("limit_key", AttributeValue.fromS(key));
+        try {
+            Map<String, AttributeValue> seen = dynamoDb.getItem(GetItemRequest.builder()
+                    .tableName(sharedTable)
+                    .key(itemKey)
+                    .consistentRead(true)
+                    .build()).item();
+            for (int attempt = 0; attempt < SHARED_ATTEMPTS; attempt++) {
+                boolean exists = seen != null && seen.containsKey("tokens");
+                long tokens = exists
+                        ? refill(Long.parseLong(seen.get("tokens").n()), Long.parseLong(seen.get("refilled_at").n()), now)
+                        : capacity * TOKEN;
+                if (tokens < TOKEN) {
+                    return retryAfter(tokens);
+                }
+                try {
+                    dynamoDb.updateItem(take(itemKey, exists ? seen : null, tokens - TOKEN, now));
+                    return 0;
+                } catch (ConditionalCheckFailedException e) {
+                    // another instance took a token first; retry against its state
+                    seen = e.hasItem() ? e.item() : null;
+                }
+            }
+            return 1;
+        } catch (RuntimeException e) {
+            System.err.println("Shared rate limit unavailable, allowing toggle: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    private UpdateItemRequest take(Map<String, AttributeValue> itemKey, Map<String, AttributeValue> seen,
+                                   long tokens, long now) {
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":tokens", AttributeValue.fromN(Long.toString(tokens)));
+        values.put(":now", AttributeValue.fromN(Long.toString(now)));
+        // DynamoDB TTL removes the bucket once it would be full again anyway
+        long refillMillis = (capacity * TOKEN - tokens) / perMinute;
+        values.put(":expires", AttributeValue.fromN(Long.toString((now + refillMillis) / 1000 + 60)));
+        String condition;
+        if (seen == null) {
+            condition = "attribute_not_exists(tokens)";
+        } else {
+            condition = "tokens = :seenTokens AND refilled_at = :seenAt";
+            values.put(":seenTokens", seen.get("tokens"));
+            values.put(":seenAt", seen.get("refilled_at"));
+        }
+        return UpdateItemRequest.builder()
+                .tableName(sharedTable)
+                .key(itemKey)
+                .updateExpression("SET tokens = :tokens, refilled_at = :now, expires_at = :expires")
+                .conditionExpression(condition)
+                .expressionAttributeValues(values)
+                .returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD)
+                .build();
+    }
+}
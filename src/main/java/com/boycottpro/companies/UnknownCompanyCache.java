@@ -0,0 +1,69 @@
+package com.boycottpro.companies;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded LRU of company ids whose last update failed the attribute_exists
+ * condition. Entries expire after a TTL so a company created later is picked
+ * up again; DynamoDB stays the source of truth.
+ */
+public class UnknownCompanyCache {
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private final LinkedHashMap<String, Long> expiries;
+
+    public UnknownCompanyCache(int maxEntries, long ttlMillis) {
+        this(maxEntries, ttlMillis, System::currentTimeMillis);
+    }
+
+    UnknownCompanyCache(int maxEntries, long ttlMillis, LongSupplier clock) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+        this.expiries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > UnknownCompanyCache.this.maxEntries;
+            }
+        };
+    }
+
+    public static UnknownCompanyCache fromEnv() {
+        return new UnknownCompanyCache(
+                DynamoDbClients.envInt("UNKNOWN_COMPANY_CACHE_SIZE", 10000),
+                DynamoDbClients.envInt("UNKNOWN_COMPANY_TTL_SECONDS", 300) * 1000L);
+    }
+
+    public synchronized boolean isKnownMissing(String companyId) {
+        if (maxEntries <= 0) {
+            return false;
+        }
+        Long expiry = expiries.get(companyId);
+        if (expiry == null) {
+            return false;
+        }
+        if (expiry <= clock.getAsLong()) {
+            expiries.remove(companyId);
+            return false;
+        }
+        return true;
+    }
+
+    public synchronized void recordMissing(String companyId) {
+        if (maxEntries > 0) {
+            expiries.put(companyId, clock.getAsLong() + ttlMillis);
+        }
+    }
+
+    public synchronized void invalidate(String companyId) {
+        expiries.remove(companyId);
+    }
+
+    public synchronized int size() {
+        return expiries.size();
+    }
+}
@@ -0,0 +1,172 @@
+package com.boycottpro.companies;
+
+import com.boycottpro.utilities.Logger;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Holds increments that could not be written because DynamoDB was
+ * throttling. With WRITE_BEHIND_QUEUE_URL set, each delta is sent to that
+ * queue and replayed by {@link IncrementCompanyBoycottBatchHandler}, which
+ * nets it per company. Otherwise deltas are netted per company in memory and
+ * drained by this instance with exponential backoff; a delta DynamoDB
+ * rejects for good (not throttled, not a 5xx, not retryable) is logged and
+ * dropped instead of being retried forever. The in-memory mode is
+ * only for long-lived processes: under Lambda a frozen or recycled instance
+ * would lose deltas that were already acknowledged with 202, so it is
+ * refused there and write-behind stays off without a queue.
+ */
+public class WriteBehindJournal {
+
+    static final long INITIAL_BACKOFF_MILLIS = 200;
+    static final long MAX_BACKOFF_MILLIS = 30000;
+    // drains run on the request thread, so each one is kept short
+    static final int MAX_DRAIN_WRITES = 25;
+    static final long MAX_DRAIN_MILLIS = 50;
+
+    private final boolean enabled;
+    private final int maxCompanies;
+    private final String queueUrl;
+    private final SqsClient sqs;
+    private final LongSupplier clock;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ConcurrentHashMap<String, Integer> pending = new ConcurrentHashMap<>();
+    private final ReentrantLock draining = new ReentrantLock();
+    private long backoffMillis = INITIAL_BACKOFF_MILLIS;
+    private volatile long nextDrainAt;
+
+    public WriteBehindJournal(boolean enabled, int maxCompanies, String queueUrl, SqsClient sqs) {
+        this(enabled, maxCompanies, queueUrl, sqs, System::currentTimeMillis);
+    }
+
+    WriteBehindJournal(boolean enabled, int maxCompanies, String queueUrl, SqsClient sqs, LongSupplier clock) {
+        this.enabled = enabled;
+        this.maxCompanies = maxCompanies;
+        this.queueUrl = queueUrl;
+        this.sqs = sqs;
+        this.clock = clock;
+    }
+
+    public static WriteBehindJournal fromEnv() {
+        boolean enabled = Boolean.parseBoolean(System.getenv("WRITE_BEHIND_ENABLED"));
+        String queueUrl = System.getenv("WRITE_BEHIND_QUEUE_URL");
+        if (queueUrl != null && queueUrl.isBlank()) {
+            queueUrl = null;
+        }
+        if (enabled && queueUrl == null && System.getenv("AWS_LAMBDA_FUNCTION_NAME") != null) {
+            Logger.error(58, null, "WRITE_BEHIND_ENABLED needs WRITE_BEHIND_QUEUE_URL under Lambda, write-behind is off");
+            enabled = false;
+        }
+        SqsClient sqs = enabled && queueUrl != null ? SqsClient.create() : null;
+        return new WriteBehindJournal(enabled, DynamoDbClients.envInt("WRITE_BEHIND_MAX_COMPANIES", 10000),
+                queueUrl, sqs);
+    }
+
+    /**
+     * Records a delta for later replay. Returns false when write-behind is off
+     * or full, in which case the caller should fail the request as before.
+     */
+    public boolean append(String companyId, int delta) {
+        if (!enabled) {
+            return false;
+        }
+        if (queueUrl != null) {
+            try {
+                sqs.sendMessage(SendMessageRequest.builder()
+                        .queueUrl(queueUrl)
+                        .messageBody(objectMapper.writeValueAsString(Map.of("company_id", companyId, "delta", delta)))
+                        .build());
+                return true;
+            } catch (Exception e) {
+                Logger.error(77, null, "write-behind enqueue failed: " + e.getMessage());
+                return false;
+            }
+        }
+        if (!pending.containsKey(companyId) && pending.size() >= maxCompanies) {
+            return false;
+        }
+        pending.merge(companyId, delta, Integer::sum);
+        if (nextDrainAt == 0) {
+            nextDrainAt = clock.getAsLong() + backoffMillis;
+        }
+        return true;
+    }
+
+    public boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    public int pendingDelta(String companyId) {
+        return pending.getOrDefault(companyId, 0);
+    }
+
+    /**
+     * Replays pending net deltas if the backoff has elapsed, at most
+     * MAX_DRAIN_WRITES companies or MAX_DRAIN_MILLIS per call. A caller that
+     * finds another drain in progress returns at once instead of waiting.
+     * Stops at the first throttle or client-side failure and doubles the
+     * backoff; a clean pass resets it.
+     */
+    public int drain(BoycottCountUpdater countUpdater) {
+        if (pending.isEmpty() || clock.getAsLong() < nextDrainAt || !draining.tryLock()) {
+            return 0;
+        }
+        try {
+            return drainBatch(countUpdater);
+        } finally {
+            draining.unlock();
+        }
+    }
+
+    private int drainBatch(BoycottCountUpdater countUpdater) {
+        long started = clock.getAsLong();
+        int attempted = 0;
+        int written = 0;
+        List<String> companyIds = new ArrayList<>(pending.keySet());
+        for (String companyId : companyIds) {
+            if (attempted == MAX_DRAIN_WRITES || clock.getAsLong() - started >= MAX_DRAIN_MILLIS) {
+                // out of budget, not throttled: the next request carries on
+                nextDrainAt = clock.getAsLong();
+                return written;
+            }
+            Integer delta = pending.remove(companyId);
+            if (delta == null || delta == 0) {
+                continue;
+            }
+            attempted++;
+            try {
+                countUpdater.applyDelta(companyId, delta);
+                written++;
+            } catch (ConditionalCheckFailedException e) {
+                Logger.error(117, null, "dropping deferred delta for missing company " + companyId);
+            } catch (SdkException e) {
+                if (!IncrementCompanyBoycottBatchHandler.isTransient(e)) {
+                    Logger.error(121, null, "dropping deferred delta " + delta + " for " + companyId
+                            + ": " + e.getMessage());
+                    continue;
+                }
+                pending.merge(companyId, delta, Integer::sum);
+                if (!(e instanceof DynamoDbException) || ((DynamoDbException) e).isThrottlingException()) {
+                    backoffMillis = Math.min(backoffMillis * 2, MAX_BACKOFF_MILLIS);
+                    nextDrainAt = clock.getAsLong() + backoffMillis;
+                    return written;
+                }
+                Logger.error(125, null, "deferred delta failed for " + companyId + ": " + e.getMessage());
+            }
+        }
+        backoffMillis = INITIAL_BACKOFF_MILLIS;
+        nextDrainAt = pending.isEmpty() ? 0 : clock.getAsLong() + backoffMillis;
+        return written;
+    }
+}
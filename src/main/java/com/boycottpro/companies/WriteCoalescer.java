@@ -0,0 +1,146 @@
+package com.boycottpro.companies;
+
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Merges increments for the same company that arrive within a short window
+ * into one net-delta UpdateItem. Only for long-lived processes such as
+ * {@link IncrementCompanyBoycottServer}; in Lambda each instance serves one
+ * request at a time, so there is nothing to merge.
+ *
+ * Every caller in a window gets the same outcome: the post-merge response,
+ * or the exception of the merged write. A throttled merged write therefore
+ * lets each caller defer its own delta, and the net effect is the same.
+ * A caller that waits longer than the timeout gets an exception while the
+ * merged write may still land, so timeouts should be well above the
+ * SDK's own call timeout.
+ */
+public class WriteCoalescer implements AutoCloseable {
+
+    static final long DEFAULT_TIMEOUT_MILLIS = 5000;
+
+    private final BoycottCountUpdater countUpdater;
+    private final long windowMillis;
+    private final long timeoutMillis;
+    private final Executor writers;
+    private final ScheduledExecutorService scheduler;
+    private final ConcurrentHashMap<String, Batch> open = new ConcurrentHashMap<>();
+
+    private static final class Batch {
+        int delta;
+        final List<CompletableFuture<UpdateItemResponse>> waiters = new ArrayList<>(4);
+    }
+
+    public WriteCoalescer(BoycottCountUpdater countUpdater, long windowMillis, Executor writers) {
+        this(countUpdater, windowMillis, DEFAULT_TIMEOUT_MILLIS, writers);
+    }
+
+    public WriteCoalescer(BoycottCountUpdater countUpdater, long windowMillis, long timeoutMillis, Executor writers) {
+        this.countUpdater = countUpdater;
+        this.windowMillis = Math.max(1, windowMillis);
+        this.timeoutMillis = Math.max(1, timeoutMillis);
+        this.writers = writers;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "write-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public CompletableFuture<UpdateItemResponse> submit(String companyId, int delta) {
+        CompletableFuture<UpdateItemResponse> future = new CompletableFuture<>();
+        boolean[] opened = new boolean[1];
+        open.compute(companyId, (id, batch) -> {
+            if (batch == null) {
+                batch = new Batch();
+                opened[0] = true;
+            }
+            batch.delta += delta;
+            batch.waiters.add(future);
+            return batch;
+        });
+        if (opened[0]) {
+            try {
+                scheduler.schedule(() -> execute(companyId), windowMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // closed while this window opened: nothing will ever flush it
+                fail(companyId, e);
+            }
+        }
+        return future;
+    }
+
+    private void execute(String companyId) {
+        try {
+            writers.execute(() -> flush(companyId));
+        } catch (RejectedExecutionException e) {
+            fail(companyId, e);
+        }
+    }
+
+    /** Blocks until the merged write for this delta completes, rethrowing its exception. */
+    public UpdateItemResponse apply(String companyId, int delta) {
+        try {
+            return submit(companyId, delta).get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("timed out waiting for coalesced write to " + companyId, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted waiting for coalesced write", e);
+        }
+    }
+
+    private void flush(String companyId) {
+        Batch batch = open.remove(companyId);
+        if (batch == null) {
+            return;
+        }
+        try {
+            // a net delta of zero is still written so a missing company fails every caller
+            UpdateItemResponse response = countUpdater.applyDelta(companyId, batch.delta);
+            for (CompletableFuture<UpdateItemResponse> waiter : batch.waiters) {
+                waiter.complete(response);
+            }
+        } catch (RuntimeException e) {
+            for (CompletableFuture<UpdateItemResponse> waiter : batch.waiters) {
+                waiter.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void fail(String companyId, RuntimeException e) {
+        Batch batch = open.remove(companyId);
+        if (batch == null) {
+            return;
+        }
+        for (CompletableFuture<UpdateItemResponse> waiter : batch.waiters) {
+            waiter.completeExceptionally(e);
+        }
+    }
+
+    /** Stops the timer and writes every open window before returning. */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        for (String companyId : new ArrayList<>(open.keySet())) {
+            flush(companyId);
+        }
+    }
+}
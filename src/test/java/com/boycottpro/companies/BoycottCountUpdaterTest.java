@@ -0,0 +1,222 @@
+package com.boycottpro.companies;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class BoycottCountUpdaterTest {
+
+    @Mock
+    private DynamoDbClient dynamoDbClient;
+
+    private BoycottCountUpdater updater(String shardSpec) {
+        return new BoycottCountUpdater(dynamoDbClient, CompanyShardConfig.parse(shardSpec), "company_boycott_shards");
+    }
+
+    @Test
+    public void testUnshardedCompanyWritesCompanyItem() {
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+                .thenReturn(UpdateItemResponse.builder().build());
+
+        updater("hot-company=4").applyDelta("test-company", 1);
+
+        ArgumentCaptor<UpdateItemRequest> captor = ArgumentCaptor.forClass(UpdateItemRequest.class);
+        verify(dynamoDbClient).updateItem(captor.capture());
+        UpdateItemRequest request = captor.getValue();
+        assertEquals("companies", request.tableName());
+        assertEquals("test-company", request.key().get("company_id").s());
+        assertEquals("attribute_exists(company_id)", request.conditionExpression());
+        assertEquals("1", request.expressionAttributeValues().get(":delta").n());
+    }
+
+    @Test
+    public void testShardedCompanyWritesShardItem() {
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+                .thenReturn(UpdateItemResponse.builder().build());
+
+        updater("hot-company=4").applyDelta("hot-company", -1);
+
+        ArgumentCaptor<UpdateItemRequest> captor = ArgumentCaptor.forClass(UpdateItemRequest.class);
+        verify(dynamoDbClient).updateItem(captor.capture());
+        UpdateItemRequest request = captor.getValue();
+        assertEquals("company_boycott_shards", request.tableName());
+        assertTrue(request.key().get("company_id").s().startsWith("hot-company#shard-"));
+        assertNull(request.conditionExpression());
+        assertEquals("-1", request.expressionAttributeValues().get(":delta").n());
+    }
+
+    @Test
+    public void testParseIgnoresInvalidAndCapsShards() {
+        CompanyShardConfig config = CompanyShardConfig.parse("a=8, b=abc, c=1, d=1000, =3");
+
+        assertEquals(8, config.shardCount("a"));
+        assertEquals(1, config.shardCount("b"));
+        assertEquals(1, config.shardCount("c"));
+        assertEquals(CompanyShardConfig.MAX_SHARDS, config.shardCount("d"));
+        assertEquals(1, config.shardCount("unknown"));
+    }
+
+    @Test
+    public void testReadCountSumsShards() {
+        when(dynamoDbClient.getItem(any(GetItemRequest.class)))
+                .thenReturn(GetItemResponse.builder()
+                        .item(Map.of("boycott_count", AttributeValue.fromN("100")))
+                        .build());
+        when(dynamoDbClient.batchGetItem(any(BatchGetItemRequest.class)))
+                .thenReturn(BatchGetItemResponse.builder()
+                        .responses(Map.of("company_boycott_shards", List.of(
+                                Map.of("company_id", AttributeValue.fromS("hot-company#shard-0"),
+                                        "boycott_count", AttributeValue.fromN("5")),
+                                Map.of("company_id", AttributeValue.fromS("hot-company#shard-1"),
+                                        "boycott_count", AttributeValue.fromN("-2")))))
+                        .build());
+
+        assertEquals(103, updater("hot-company=2").readCount("hot-company"));
+    }
+
+    @Test
+    public void testRollupMovesShardTotals() {
+        when(dynamoDbClient.batchGetItem(any(BatchGetItemRequest.class)))
+                .thenReturn(BatchGetItemResponse.builder()
+                        .responses(Map.of("company_boycott_shards", List.of(
+                                Map.of("company_id", AttributeValue.fromS("hot-company#shard-0"),
+                                        "boycott_count", AttributeValue.fromN("5")),
+                                Map.of("company_id", AttributeValue.fromS("hot-company#shard-1"),
+                                        "boycott_count", AttributeValue.fromN("0")))))
+                        .build());
+
+        long moved = updater("hot-company=2").rollup("hot-company");
+
+        assertEquals(5, moved);
+        ArgumentCaptor<TransactWriteItemsRequest> captor = ArgumentCaptor.forClass(TransactWriteItemsRequest.class);
+        verify(dynamoDbClient).transactWriteItems(captor.capture());
+        List<TransactWriteItem> items = captor.getValue().transactItems();
+        assertEquals(2, items.size());
+        assertEquals("companies", items.get(0).update().tableName());
+        assertEquals("5", items.get(0).update().expressionAttributeValues().get(":delta").n());
+        assertEquals("hot-company#shard-0", items.get(1).update().key().get("company_id").s());
+    }
+
+    @Test
+    public void testRollupUnshardedCompanyIsNoop() {
+        assertEquals(0, updater("").rollup("test-company"));
+        verifyNoInteractions(dynamoDbClient);
+    }
+
+    @Test
+    public void testTimeBucketsAreUpdatedInSameWrite() {
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+                .thenReturn(UpdateItemResponse.builder().build());
+        BoycottCountUpdater updater = updater("");
+        updater.setTimeBuckets(new TimeBuckets(
+                Clock.fixed(Instant.parse("2026-10-17T14:30:00Z"), ZoneOffset.UTC), 48, 30));
+
+        updater.applyDelta("test-company", 1);
+
+        ArgumentCaptor<UpdateItemRequest> captor = ArgumentCaptor.forClass(UpdateItemRequest.class);
+        verify(dynamoDbClient).updateItem(captor.capture());
+        UpdateItemRequest request = captor.getValue();
+        assertTrue(request.updateExpression().contains("boycott_hourly.#hour = if_not_exists(boycott_hourly.#hour, :zero) + :delta"));
+        assertTrue(request.updateExpression().contains("REMOVE boycott_hourly.#expiredHour, boycott_daily.#expiredDay"));
+        assertEquals("2026101714", request.expressionAttributeNames().get("#hour"));
+        assertEquals("20261017", request.expressionAttributeNames().get("#day"));
+        assertEquals("2026101514", request.expressionAttributeNames().get("#expiredHour"));
+        assertEquals("20260917", request.expressionAttributeNames().get("#expiredDay"));
+    }
+
+    @Test
+    public void testMissingBucketMapsAreInitializedAndRetried() {
+        DynamoDbException invalidPath = (DynamoDbException) DynamoDbException.builder()
+                .message("The document path provided in the update expression is invalid for update")
+                .statusCode(400)
+                .awsErrorDetails(AwsErrorDetails.builder().errorCode("ValidationException").build())
+                .build();
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+                .thenThrow(invalidPath)
+                .thenReturn(UpdateItemResponse.builder().build());
+        BoycottCountUpdater updater = updater("");
+        updater.setTimeBuckets(new TimeBuckets(Clock.systemUTC(), 48, 30));
+
+        updater.applyDelta("test-company", 1);
+
+        ArgumentCaptor<UpdateItemRequest> captor = ArgumentCaptor.forClass(UpdateItemRequest.class);
+        verify(dynamoDbClient, times(3)).updateItem(captor.capture());
+        UpdateItemRequest init = captor.getAllValues().get(1);
+        assertTrue(init.updateExpression().startsWith("SET boycott_hourly = if_not_exists(boycott_hourly, :empty)"));
+        assertEquals("attribute_exists(company_id)", init.conditionExpression());
+        assertEquals(captor.getAllValues().get(0), captor.getAllValues().get(2));
+    }
+
+    @Test
+    public void testHourlyDeltasAreSummedOverShardsAndExpiredKeysPruned() {
+        when(dynamoDbClient.getItem(any(GetItemRequest.class))).thenReturn(GetItemResponse.builder()
+                .item(Map.of("boycott_hourly", AttributeValue.fromM(Map.of(
+                        "2026101714", AttributeValue.fromN("2"),
+                        "2026101001", AttributeValue.fromN("5")))))
+                .build());
+        when(dynamoDbClient.batchGetItem(any(BatchGetItemRequest.class)))
+                .thenReturn(BatchGetItemResponse.builder()
+                        .responses(Map.of("company_boycott_shards", List.of(
+                                Map.of("company_id", AttributeValue.fromS("hot-company#shard-0"),
+                                        "boycott_hourly", AttributeValue.fromM(Map.of(
+                                                "2026101714", AttributeValue.fromN("3")))),
+                                Map.of("company_id", AttributeValue.fromS("hot-company#shard-1"),
+                                        "boycott_hourly", AttributeValue.fromM(Map.of(
+                                                "2026101713", AttributeValue.fromN("1"))),
+                                        "boycott_daily", AttributeValue.fromM(Map.of(
+                                                "20260901", AttributeValue.fromN("4")))))))
+                        .build());
+        BoycottCountUpdater updater = updater("hot-company=2");
+        updater.setTimeBuckets(new TimeBuckets(
+                Clock.fixed(Instant.parse("2026-10-17T14:30:00Z"), ZoneOffset.UTC), 48, 30));
+
+        assertEquals(Map.of("2026101714", 5L, "2026101713", 1L), updater.readHourlyDeltas("hot-company"));
+
+        ArgumentCaptor<UpdateItemRequest> captor = ArgumentCaptor.forClass(UpdateItemRequest.class);
+        verify(dynamoDbClient, times(2)).updateItem(captor.capture());
+        assertTrue(captor.getAllValues().stream().anyMatch(prune -> prune.tableName().equals("companies")
+                && prune.updateExpression().equals("REMOVE boycott_hourly.#k0")
+                && prune.expressionAttributeNames().get("#k0").equals("2026101001")));
+        assertTrue(captor.getAllValues().stream().anyMatch(prune -> prune.tableName().equals("company_boycott_shards")
+                && prune.key().get("company_id").s().equals("hot-company#shard-1")
+                && prune.updateExpression().equals("REMOVE boycott_daily.#k0")
+                && prune.expressionAttributeNames().get("#k0").equals("20260901")));
+    }
+
+    @Test
+    public void testTransactionalUpdatesSkipTimeBuckets() {
+        BoycottCountUpdater updater = updater("");
+        updater.setTimeBuckets(new TimeBuckets(Clock.systemUTC(), 48, 30));
+
+        Update update = updater.buildTransactUpdate("test-company", 1);
+
+        assertEquals("SET boycott_count = if_not_exists(boycott_count, :zero) + :delta", update.updateExpression());
+        assertFalse(update.hasExpressionAttributeNames());
+    }
+
+    @Test
+    public void testTransactionalUpdateWithExpectedCount() {
+        Update update = updater("").buildTransactUpdate("test-company", 1, 5L);
+
+        assertEquals("attribute_exists(company_id) AND boycott_count = :expected", update.conditionExpression());
+        assertEquals("5", update.expressionAttributeValues().get(":expected").n());
+        assertEquals(ReturnValuesOnConditionCheckFailure.ALL_OLD, update.returnValuesOnConditionCheckFailure());
+        assertThrows(IllegalArgumentException.class,
+                () -> updater("hot-company=4").buildTransactUpdate("hot-company", 1, 5L));
+    }
+}
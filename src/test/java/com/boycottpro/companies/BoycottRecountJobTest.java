@@ -0,0 +1,297 @@
+package com.boycottpro.companies;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.ScheduledEvent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class BoycottRecountJobTest {
+
+    @Mock
+    private DynamoDbClient dynamoDbClient;
+
+    @Mock
+    private Context context;
+
+    private BoycottRecountJob job() {
+        return job(System::currentTimeMillis);
+    }
+
+    private BoycottRecountJob job(LongSupplier clock) {
+        return new BoycottRecountJob(dynamoDbClient,
+                new RecountCheckpoints(dynamoDbClient, RecountCheckpoints.DEFAULT_TABLE),
+                CompanyShardConfig.parse("hot-company=4"), "user_boycotts", 2, 2, 100, clock);
+    }
+
+    private static ScheduledEvent event() {
+        ScheduledEvent event = new ScheduledEvent();
+        event.setDetail(Map.of("run_id", "run-1"));
+        return event;
+    }
+
+    private static Map<String, AttributeValue> record(String companyId) {
+        return Map.of("company_id", AttributeValue.fromS(companyId));
+    }
+
+    private static Map<String, AttributeValue> company(String companyId, long count) {
+        return Map.of("company_id", AttributeValue.fromS(companyId),
+                "boycott_count", AttributeValue.fromN(Long.toString(count)));
+    }
+
+    private void stubScans() {
+        stubScans(new ConcurrentHashMap<>(Map.of("a", 2L, "b", -1L, "c", 0L, "hot-company", 9L)));
+    }
+
+    /** Companies are read from {@code stored}; a live increment for b lands after segment 1 is scanned. */
+    private void stubScans(Map<String, Long> stored) {
+        when(dynamoDbClient.scan(any(ScanRequest.class))).thenAnswer(invocation -> {
+            ScanRequest request = invocation.getArgument(0);
+            if (request.tableName().equals("companies")) {
+                List<Map<String, AttributeValue>> items = new ArrayList<>();
+                stored.forEach((companyId, count) -> items.add(company(companyId, count)));
+                return ScanResponse.builder().items(items).build();
+            }
+            if (request.segment() == 0 && !request.hasExclusiveStartKey()) {
+                return ScanResponse.builder()
+                        .items(record("a"), record("b"))
+                        .lastEvaluatedKey(Map.of("user_id", AttributeValue.fromS("u2")))
+                        .build();
+            }
+            if (request.segment() == 0) {
+                return ScanResponse.builder().items(record("b")).build();
+            }
+            return ScanResponse.builder().items(record("a"), record("hot-company")).build();
+        });
+    }
+
+    /** Backs the checkpoint table with a map, so a later invocation reads what an earlier one saved. */
+    private void stubCheckpointTable() {
+        Map<String, Map<String, AttributeValue>> table = new ConcurrentHashMap<>();
+        when(dynamoDbClient.putItem(any(PutItemRequest.class))).thenAnswer(invocation -> {
+            PutItemRequest request = invocation.getArgument(0);
+            table.put(request.item().get("checkpoint_id").s(), request.item());
+            return PutItemResponse.builder().build();
+        });
+        when(dynamoDbClient.getItem(any(GetItemRequest.class))).thenAnswer(invocation -> {
+            GetItemRequest request = invocation.getArgument(0);
+            Map<String, AttributeValue> item = table.get(request.key().get("checkpoint_id").s());
+            return item == null ? GetItemResponse.builder().build() : GetItemResponse.builder().item(item).build();
+        });
+    }
+
+    /** Answers checkpoint reads with a pending drift of 3 for b, as left by the previous run. */
+    private void stubPreviousDrift() {
+        when(dynamoDbClient.getItem(any(GetItemRequest.class))).thenAnswer(invocation -> {
+            GetItemRequest request = invocation.getArgument(0);
+            String id = request.key().get("checkpoint_id").s();
+            if (id.equals(RecountCheckpoints.PENDING_DRIFT_ID)) {
+                return GetItemResponse.builder().item(Map.of("chunks", AttributeValue.fromN("1"))).build();
+            }
+            if (id.equals(RecountCheckpoints.PENDING_DRIFT_ID + "#0")) {
+                return GetItemResponse.builder().item(Map.of("counts", AttributeValue.fromM(
+                        Map.of("b", AttributeValue.fromN("3"))))).build();
+            }
+            return GetItemResponse.builder().build();
+        });
+    }
+
+    @Test
+    public void testConfirmedDriftIsCorrectedAsDelta() {
+        stubPreviousDrift();
+        stubScans();
+
+        String result = job().handleRequest(event(), null);
+
+        assertEquals("recount run-1: corrected = 1, unchanged = 2, pending = 0, skipped = 1", result);
+        ArgumentCaptor<UpdateItemRequest> captor = ArgumentCaptor.forClass(UpdateItemRequest.class);
+        verify(dynamoDbClient).updateItem(captor.capture());
+        UpdateItemRequest update = captor.getValue();
+        assertEquals("b", update.key().get("company_id").s());
+        assertEquals("3", update.expressionAttributeValues().get(":drift").n());
+        assertEquals("SET boycott_count = if_not_exists(boycott_count, :zero) + :drift", update.updateExpression());
+        assertEquals("attribute_exists(company_id)", update.conditionExpression());
+        verify(dynamoDbClient, atLeastOnce()).putItem(argThat((PutItemRequest put) ->
+                put.item().get("checkpoint_id").s().equals("run-1#complete")));
+    }
+
+    @Test
+    public void testDriftSeenOnceIsOnlyRecorded() {
+        when(dynamoDbClient.getItem(any(GetItemRequest.class))).thenReturn(GetItemResponse.builder().build());
+        stubScans();
+
+        String result = job().handleRequest(event(), null);
+
+        assertEquals("recount run-1: corrected = 0, unchanged = 2, pending = 1, skipped = 1", result);
+        verify(dynamoDbClient, never()).updateItem(any(UpdateItemRequest.class));
+        verify(dynamoDbClient).putItem(argThat((PutItemRequest put) ->
+                put.item().get("checkpoint_id").s().equals(RecountCheckpoints.PENDING_DRIFT_ID + "#0")
+                        && put.item().get("counts").m().equals(Map.of("b", AttributeValue.fromN("3")))));
+    }
+
+    @Test
+    public void testIncrementAfterSegmentScanSurvivesWriteBack() {
+        Map<String, Long> stored = new ConcurrentHashMap<>(Map.of("a", 2L, "b", -1L, "c", 0L, "hot-company", 9L));
+        stubPreviousDrift();
+        stubScans(stored);
+        doAnswer(invocation -> {
+            // a user boycotts b after its records were counted
+            stored.merge("b", 1L, Long::sum);
+            return ScanResponse.builder().items(record("a"), record("hot-company")).build();
+        }).when(dynamoDbClient).scan(argThat((ScanRequest request) -> "user_boycotts".equals(request.tableName())
+                && Integer.valueOf(1).equals(request.segment())));
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class))).thenAnswer(invocation -> {
+            UpdateItemRequest request = invocation.getArgument(0);
+            stored.merge(request.key().get("company_id").s(),
+                    Long.parseLong(request.expressionAttributeValues().get(":drift").n()), Long::sum);
+            return UpdateItemResponse.builder().build();
+        });
+
+        job().handleRequest(event(), null);
+
+        // 2 records counted, 1 written since, and the live increment is kept
+        assertEquals(3L, stored.get("b"));
+    }
+
+    @Test
+    public void testFinishedSegmentsAreNotRescanned() {
+        List<ScanRequest> scans = new ArrayList<>();
+        when(dynamoDbClient.getItem(any(GetItemRequest.class))).thenAnswer(invocation -> {
+            GetItemRequest request = invocation.getArgument(0);
+            String id = request.key().get("checkpoint_id").s();
+            if (id.equals("run-1#segment-0")) {
+                return GetItemResponse.builder().item(Map.of("chunks", AttributeValue.fromN("1"))).build();
+            }
+            if (id.equals("run-1#segment-0#0")) {
+                return GetItemResponse.builder().item(Map.of("counts", AttributeValue.fromM(
+                        Map.of("a", AttributeValue.fromN("1"), "b", AttributeValue.fromN("2"))))).build();
+            }
+            return GetItemResponse.builder().build();
+        });
+        when(dynamoDbClient.scan(any(ScanRequest.class))).thenAnswer(invocation -> {
+            ScanRequest request = invocation.getArgument(0);
+            scans.add(request);
+            if (request.tableName().equals("companies")) {
+                return ScanResponse.builder().items(company("a", 2), company("b", 2)).build();
+            }
+            return ScanResponse.builder().items(record("a")).build();
+        });
+
+        String result = job().handleRequest(event(), null);
+
+        assertEquals("recount run-1: corrected = 0, unchanged = 2, pending = 0, skipped = 0", result);
+        assertTrue(scans.stream().noneMatch(scan -> scan.tableName().equals("user_boycotts")
+                && scan.segment() == 0));
+    }
+
+    @Test
+    public void testJobPausesWhenOutOfTime() {
+        when(dynamoDbClient.getItem(any(GetItemRequest.class))).thenReturn(GetItemResponse.builder().build());
+        when(context.getRemainingTimeInMillis()).thenReturn((int) BoycottRecountJob.MIN_TIME_MARGIN_MILLIS - 1);
+
+        String result = job().handleRequest(event(), context);
+
+        assertEquals("recount run-1 paused, segments remaining = 2", result);
+        verify(dynamoDbClient, never()).scan(any(ScanRequest.class));
+        verify(dynamoDbClient, never()).updateItem(any(UpdateItemRequest.class));
+    }
+
+    @Test
+    public void testTimeMarginScalesWithRemainingTime() {
+        assertEquals(BoycottRecountJob.MIN_TIME_MARGIN_MILLIS, BoycottRecountJob.timeMargin(10000));
+        // a 60 s invocation keeps 54 s to work with
+        assertEquals(6000, BoycottRecountJob.timeMargin(60000));
+        assertEquals(BoycottRecountJob.MAX_TIME_MARGIN_MILLIS, BoycottRecountJob.timeMargin(900000));
+    }
+
+    @Test
+    public void testSnapshotCutOffByDeadlinePauses() {
+        long[] now = {0};
+        when(dynamoDbClient.getItem(any(GetItemRequest.class))).thenReturn(GetItemResponse.builder().build());
+        when(dynamoDbClient.scan(any(ScanRequest.class))).thenAnswer(invocation -> {
+            now[0] += 60000;
+            return ScanResponse.builder()
+                    .items(company("a", 1))
+                    .lastEvaluatedKey(Map.of("company_id", AttributeValue.fromS("a")))
+                    .build();
+        });
+        when(context.getRemainingTimeInMillis()).thenReturn(60000);
+
+        String result = job(() -> now[0]).handleRequest(event(), context);
+
+        assertEquals("recount run-1 paused, segments remaining = 2", result);
+        verify(dynamoDbClient, times(1)).scan(any(ScanRequest.class));
+        verify(dynamoDbClient, never()).putItem(any(PutItemRequest.class));
+    }
+
+    @Test
+    public void testSegmentCutOffResumesFromLastKey() {
+        long[] now = {0};
+        List<ScanRequest> scans = new ArrayList<>();
+        stubCheckpointTable();
+        when(dynamoDbClient.scan(any(ScanRequest.class))).thenAnswer(invocation -> {
+            ScanRequest request = invocation.getArgument(0);
+            scans.add(request);
+            now[0] += 1000;
+            if (!request.hasExclusiveStartKey()) {
+                return ScanResponse.builder()
+                        .items(record("a"), record("b"))
+                        .lastEvaluatedKey(Map.of("user_id", AttributeValue.fromS("u2")))
+                        .build();
+            }
+            return ScanResponse.builder().items(record("b")).build();
+        });
+        BoycottRecountJob job = job(() -> now[0]);
+
+        BoycottRecountJob.SegmentCounts first = job.countSegment("run-1", 0, 500);
+        BoycottRecountJob.SegmentCounts second = job.countSegment("run-1", 0, Long.MAX_VALUE);
+
+        assertEquals(1, first.remaining);
+        assertEquals(0, second.remaining);
+        assertEquals(1L, second.counts.get("a")[0]);
+        assertEquals(2L, second.counts.get("b")[0]);
+        assertEquals(2, scans.size());
+        assertEquals("u2", scans.get(1).exclusiveStartKey().get("user_id").s());
+    }
+
+    @Test
+    public void testCompletedRunIsSkipped() {
+        when(dynamoDbClient.getItem(any(GetItemRequest.class))).thenReturn(GetItemResponse.builder()
+                .item(Map.of("checkpoint_id", AttributeValue.fromS("run-1#complete")))
+                .build());
+
+        assertEquals("recount run-1 already complete", job().handleRequest(event(), null));
+        verify(dynamoDbClient, never()).scan(any(ScanRequest.class));
+    }
+
+    @Test
+    public void testLargeSegmentsAreCheckpointedInChunks() {
+        Map<String, long[]> counts = new HashMap<>();
+        for (int i = 0; i < RecountCheckpoints.CHUNK_SIZE + 1; i++) {
+            counts.put("company-" + i, new long[]{i});
+        }
+
+        new RecountCheckpoints(dynamoDbClient, RecountCheckpoints.DEFAULT_TABLE).save("run-1", 3, counts);
+
+        ArgumentCaptor<PutItemRequest> captor = ArgumentCaptor.forClass(PutItemRequest.class);
+        verify(dynamoDbClient, times(3)).putItem(captor.capture());
+        PutItemRequest header = captor.getAllValues().get(2);
+        assertEquals("run-1#segment-3", header.item().get("checkpoint_id").s());
+        assertEquals("2", header.item().get("chunks").n());
+    }
+}
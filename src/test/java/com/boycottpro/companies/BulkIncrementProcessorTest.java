@@ -0,0 +1,146 @@
+package com.boycottpro.companies;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class BulkIncrementProcessorTest {
+
+    @Mock
+    private DynamoDbClient dynamoDbClient;
+
+    private BulkIncrementProcessor processor;
+
+    @BeforeEach
+    public void setUp() {
+        BoycottCountUpdater updater = new BoycottCountUpdater(dynamoDbClient,
+                CompanyShardConfig.parse(""), "company_boycott_shards");
+        processor = new BulkIncrementProcessor(dynamoDbClient, updater, new ObjectMapper(), 4);
+    }
+
+    @Test
+    public void testConcurrentWritesReportPerItem() {
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+                .thenAnswer(invocation -> {
+                    UpdateItemRequest request = invocation.getArgument(0);
+                    if (request.key().get("company_id").s().equals("missing")) {
+                        throw ConditionalCheckFailedException.builder().message("Not found").build();
+                    }
+                    return UpdateItemResponse.builder().build();
+                });
+
+        List<BulkIncrementProcessor.ItemResult> results = processor.process(
+                "{\"items\":[{\"company_id\":\"a\",\"increment\":true},"
+                        + "{\"company_id\":\"missing\",\"increment\":true},"
+                        + "{\"company_id\":\"b\",\"increment\":false}]}");
+
+        assertEquals(3, results.size());
+        assertEquals("updated", results.get(0).status());
+        assertEquals("not_found", results.get(1).status());
+        assertEquals("updated", results.get(2).status());
+        verify(dynamoDbClient, times(3)).updateItem(any(UpdateItemRequest.class));
+    }
+
+    @Test
+    public void testConcurrentWritesUseAsyncClientWhenConfigured() {
+        DynamoDbAsyncClient asyncClient = mock(DynamoDbAsyncClient.class);
+        when(asyncClient.updateItem(any(UpdateItemRequest.class)))
+                .thenAnswer(invocation -> {
+                    UpdateItemRequest request = invocation.getArgument(0);
+                    if (request.key().get("company_id").s().equals("missing")) {
+                        return CompletableFuture.failedFuture(
+                                ConditionalCheckFailedException.builder().message("Not found").build());
+                    }
+                    return CompletableFuture.completedFuture(UpdateItemResponse.builder().build());
+                });
+        BoycottCountUpdater updater = new BoycottCountUpdater(dynamoDbClient, asyncClient,
+                CompanyShardConfig.parse(""), "company_boycott_shards");
+        processor = new BulkIncrementProcessor(dynamoDbClient, updater, new ObjectMapper(), 4);
+
+        List<BulkIncrementProcessor.ItemResult> results = processor.process(
+                "{\"items\":[{\"company_id\":\"a\",\"increment\":true},"
+                        + "{\"company_id\":\"missing\",\"increment\":true}]}");
+
+        assertEquals("updated", results.get(0).status());
+        assertEquals("not_found", results.get(1).status());
+        verify(asyncClient, times(2)).updateItem(any(UpdateItemRequest.class));
+        verifyNoInteractions(dynamoDbClient);
+    }
+
+    @Test
+    public void testDuplicateCompaniesAreNetted() {
+        List<BulkIncrementProcessor.ItemResult> results = processor.process(
+                "{\"items\":[{\"company_id\":\"a\",\"increment\":true},"
+                        + "{\"company_id\":\"a\",\"increment\":false}]}");
+
+        assertEquals(2, results.size());
+        assertEquals("updated", results.get(1).status());
+        verifyNoInteractions(dynamoDbClient);
+    }
+
+    @Test
+    public void testRefusedEntryCancelsAtomicBatch() {
+        List<BulkIncrementProcessor.ItemResult> results = processor.process(
+                "{\"atomic\":true,\"items\":[{\"company_id\":\"a\",\"increment\":true},"
+                        + "{\"company_id\":\"b\",\"increment\":true}]}",
+                companyId -> !companyId.equals("b"));
+
+        assertEquals("cancelled", results.get(0).status());
+        assertEquals("rate_limited", results.get(1).status());
+        verifyNoInteractions(dynamoDbClient);
+    }
+
+    @Test
+    public void testAtomicUsesSingleTransaction() {
+        processor.process("{\"atomic\":true,\"items\":[{\"company_id\":\"a\",\"increment\":true},"
+                + "{\"company_id\":\"b\",\"increment\":true}]}");
+
+        ArgumentCaptor<TransactWriteItemsRequest> captor = ArgumentCaptor.forClass(TransactWriteItemsRequest.class);
+        verify(dynamoDbClient).transactWriteItems(captor.capture());
+        assertEquals(2, captor.getValue().transactItems().size());
+        assertEquals("attribute_exists(company_id)",
+                captor.getValue().transactItems().get(0).update().conditionExpression());
+        verify(dynamoDbClient, never()).updateItem(any(UpdateItemRequest.class));
+    }
+
+    @Test
+    public void testAtomicCancellationNamesFailedCompany() {
+        when(dynamoDbClient.transactWriteItems(any(TransactWriteItemsRequest.class)))
+                .thenThrow(TransactionCanceledException.builder()
+                        .cancellationReasons(
+                                CancellationReason.builder().code("None").build(),
+                                CancellationReason.builder().code("ConditionalCheckFailed").build())
+                        .build());
+
+        List<BulkIncrementProcessor.ItemResult> results = processor.process(
+                "{\"atomic\":true,\"items\":[{\"company_id\":\"a\",\"increment\":true},"
+                        + "{\"company_id\":\"missing\",\"increment\":true}]}");
+
+        assertEquals("cancelled", results.get(0).status());
+        assertEquals("not_found", results.get(1).status());
+    }
+
+    @Test
+    public void testInvalidBodies() {
+        assertThrows(IllegalArgumentException.class, () -> processor.process("not json"));
+        assertThrows(IllegalArgumentException.class, () -> processor.process("{\"items\":[]}"));
+        assertThrows(IllegalArgumentException.class,
+                () -> processor.process("{\"items\":[{\"increment\":true}]}"));
+        assertThrows(IllegalArgumentException.class,
+                () -> processor.process("{\"items\":[{\"company_id\":\"a\",\"increment\":\"yes\"}]}"));
+    }
+}
@@ -0,0 +1,59 @@
+package com.boycottpro.companies;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.auth.credentials.AnonymousCredentialsProvider;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DynamoDbClientsTest {
+
+    @Test
+    public void testEnvIntFallsBackToDefault() {
+        assertEquals(42, DynamoDbClients.envInt("DYNAMODB_CLIENTS_TEST_UNSET", 42));
+        // PATH is always set but never a number
+        assertEquals(7, DynamoDbClients.envInt("PATH", 7));
+    }
+
+    @Test
+    public void testOverrideConfigurationDefaults() {
+        ClientOverrideConfiguration configuration = DynamoDbClients.overrideConfiguration();
+
+        assertEquals(Duration.ofMillis(3000), configuration.apiCallTimeout().orElseThrow());
+        assertEquals(Duration.ofMillis(800), configuration.apiCallAttemptTimeout().orElseThrow());
+    }
+
+    @Test
+    public void testSyncClientUsesOverrideConfiguration() {
+        try (DynamoDbClient client = DynamoDbClients.syncClientBuilder()
+                .region(Region.US_EAST_1)
+                .credentialsProvider(AnonymousCredentialsProvider.create())
+                .build()) {
+            assertEquals(Duration.ofMillis(800), client.serviceClientConfiguration().overrideConfiguration()
+                    .apiCallAttemptTimeout().orElseThrow());
+        }
+    }
+
+    @Test
+    public void testClientsBuildFromDefaultChains() {
+        String region = System.getProperty("aws.region");
+        System.setProperty("aws.region", "us-east-1");
+        try (DynamoDbClient sync = DynamoDbClients.syncClient();
+             DynamoDbAsyncClient async = DynamoDbClients.asyncClient()) {
+            assertEquals(Region.US_EAST_1, sync.serviceClientConfiguration().region());
+            assertEquals(Duration.ofMillis(3000), async.serviceClientConfiguration().overrideConfiguration()
+                    .apiCallTimeout().orElseThrow());
+        } finally {
+            if (region == null) {
+                System.clearProperty("aws.region");
+            } else {
+                System.setProperty("aws.region", region);
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.boycottpro.companies;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HotKeyTrackerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testHeavyHittersAreRankedAboveLongTail() {
+        HotKeyTracker tracker = new HotKeyTracker(3, 1000000, 60000);
+        for (int i = 0; i < 5000; i++) {
+            tracker.record("company-" + i);
+            if (i % 2 == 0) {
+                tracker.record("hot-a");
+            }
+            if (i % 5 == 0) {
+                tracker.record("hot-b");
+            }
+        }
+
+        List<Map.Entry<String, Long>> top = tracker.topKeys();
+        assertEquals("hot-a", top.get(0).getKey());
+        assertEquals("hot-b", top.get(1).getKey());
+        // count-min never underestimates
+        assertTrue(tracker.estimate("hot-a") >= 2500);
+        assertTrue(tracker.estimate("hot-b") >= 1000);
+    }
+
+    @Test
+    public void testListenerIsCalledOncePerWindow() {
+        AtomicLong now = new AtomicLong(0);
+        HotKeyTracker tracker = new HotKeyTracker(5, 10, 1000, now::get,
+                new PrintStream(new ByteArrayOutputStream()));
+        List<String> flagged = new ArrayList<>();
+        tracker.setListener((companyId, estimate) -> flagged.add(companyId + "=" + estimate));
+
+        for (int i = 0; i < 25; i++) {
+            tracker.record("hot-company");
+        }
+        assertEquals(List.of("hot-company=10"), flagged);
+
+        now.set(1000);
+        // halved to 12 by the new window, then flagged again on the next write
+        tracker.record("hot-company");
+        assertEquals(List.of("hot-company=10", "hot-company=13"), flagged);
+    }
+
+    @Test
+    public void testTopKeysAreEmittedAndDecayedAtWindowEnd() throws Exception {
+        AtomicLong now = new AtomicLong(0);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HotKeyTracker tracker = new HotKeyTracker(2, 1000, 60000, now::get,
+                new PrintStream(out, true, StandardCharsets.UTF_8));
+        for (int i = 0; i < 8; i++) {
+            tracker.record("a");
+        }
+        tracker.record("b");
+
+        now.set(60000);
+        tracker.record("c");
+
+        JsonNode emf = objectMapper.readTree(out.toString(StandardCharsets.UTF_8).trim());
+        assertEquals(InvocationMetrics.NAMESPACE,
+                emf.get("_aws").get("CloudWatchMetrics").get(0).get("Namespace").asText());
+        assertEquals(8, emf.get("HotKeyMaxEstimate").asLong());
+        assertEquals("a", emf.get("hot_companies").get(0).get("company_id").asText());
+        assertEquals(4, tracker.estimate("a"));
+        assertEquals(List.of("a", "c"), tracker.topKeys().stream().map(Map.Entry::getKey).toList());
+    }
+
+    @Test
+    public void testEqualStringHashCodesDoNotShareCounters() {
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        HotKeyTracker tracker = new HotKeyTracker(5, 1000000, 60000);
+        for (int i = 0; i < 100; i++) {
+            tracker.record("Aa");
+        }
+
+        assertEquals(100, tracker.estimate("Aa"));
+        assertEquals(0, tracker.estimate("BB"));
+    }
+
+    @Test
+    public void testWindowRollsOnReadsWithoutWrites() throws Exception {
+        AtomicLong now = new AtomicLong(0);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HotKeyTracker tracker = new HotKeyTracker(2, 1000, 60000, now::get,
+                new PrintStream(out, true, StandardCharsets.UTF_8));
+        for (int i = 0; i < 6; i++) {
+            tracker.record("a");
+        }
+
+        now.set(60000);
+        List<Map.Entry<String, Long>> top = tracker.topKeys();
+
+        assertEquals(List.of(Map.entry("a", 3L)), top);
+        JsonNode emf = objectMapper.readTree(out.toString(StandardCharsets.UTF_8).trim());
+        assertEquals(6, emf.get("HotKeyMaxEstimate").asLong());
+        assertEquals(3, tracker.estimate("a"));
+    }
+
+    @Test
+    public void testDefaultListenerEmitsHotKeyMetric() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HotKeyTracker tracker = new HotKeyTracker(5, 3, 60000, () -> 1000,
+                new PrintStream(out, true, StandardCharsets.UTF_8));
+        for (int i = 0; i < 5; i++) {
+            tracker.record("hot-company");
+        }
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).trim().split("\n");
+        assertEquals(1, lines.length);
+        JsonNode emf = objectMapper.readTree(lines[0]);
+        assertEquals("HotKeyDetected",
+                emf.get("_aws").get("CloudWatchMetrics").get(0).get("Metrics").get(0).get("Name").asText());
+        assertEquals(1, emf.get("HotKeyDetected").asInt());
+        assertEquals("hot-company", emf.get("company_id").asText());
+        assertEquals(3, emf.get("estimate").asLong());
+    }
+}
@@ -0,0 +1,376 @@
+package com.boycottpro.companies;
+
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValuesOnConditionCheckFailure;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-memory stand-in for the parts of DynamoDB this function uses. Each
+ * UpdateItem is applied atomically per item, like the real service, so
+ * concurrent increments can be checked for lost updates.
+ *
+ * Supported update expressions are SET clauses of the form
+ * {@code path = operand [+|- operand]} where an operand is a value, a path
+ * or {@code if_not_exists(path, value)}, followed by an optional REMOVE list.
+ * Conditions support attribute_exists, attribute_not_exists, = and &lt;&gt;
+ * combined with AND, OR and parentheses. Paths may be one level into a map
+ * ({@code boycott_hourly.#hour}); writing into a missing map fails with the
+ * same ValidationException DynamoDB returns.
+ */
+class InMemoryDynamoDbClient implements DynamoDbClient {
+
+    private final Map<String, ConcurrentHashMap<Map<String, AttributeValue>, Map<String, AttributeValue>>> tables =
+            new ConcurrentHashMap<>();
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong throttles = new AtomicLong();
+    private volatile long latencyNanos;
+    private volatile long jitterNanos;
+    private volatile double throttleProbability;
+
+    /** Each call sleeps for latency plus a uniform random share of jitter. */
+    void setLatency(long latency, long jitter, TimeUnit unit) {
+        this.latencyNanos = unit.toNanos(latency);
+        this.jitterNanos = unit.toNanos(jitter);
+    }
+
+    /** Fraction of UpdateItem calls rejected with ProvisionedThroughputExceededException. */
+    void setThrottleProbability(double throttleProbability) {
+        this.throttleProbability = throttleProbability;
+    }
+
+    long updateCount() {
+        return updates.get();
+    }
+
+    long throttleCount() {
+        return throttles.get();
+    }
+
+    void putCompany(String companyId, long boycottCount) {
+        table(BoycottCountUpdater.TABLE_NAME).put(
+                Map.of("company_id", AttributeValue.fromS(companyId)),
+                Map.of("company_id", AttributeValue.fromS(companyId),
+                        "boycott_count", AttributeValue.fromN(Long.toString(boycottCount))));
+    }
+
+    Map<String, AttributeValue> item(String tableName, Map<String, AttributeValue> key) {
+        return table(tableName).get(key);
+    }
+
+    @Override
+    public PutItemResponse putItem(PutItemRequest request) {
+        simulateLatency();
+        Map<String, AttributeValue> item = request.item();
+        Map<String, AttributeValue> key = new HashMap<>();
+        for (Map.Entry<String, AttributeValue> attribute : item.entrySet()) {
+            if (attribute.getKey().equals("company_id")) {
+                key.put(attribute.getKey(), attribute.getValue());
+            }
+        }
+        table(request.tableName()).put(key, Map.copyOf(item));
+        return PutItemResponse.builder().build();
+    }
+
+    @Override
+    public GetItemResponse getItem(GetItemRequest request) {
+        simulateLatency();
+        Map<String, AttributeValue> item = table(request.tableName()).get(request.key());
+        if (item == null) {
+            return GetItemResponse.builder().build();
+        }
+        if (request.projectionExpression() != null) {
+            Map<String, AttributeValue> projected = new HashMap<>();
+            for (String name : request.projectionExpression().split(",")) {
+                AttributeValue value = item.get(name.trim());
+                if (value != null) {
+                    projected.put(name.trim(), value);
+                }
+            }
+            item = projected;
+        }
+        return GetItemResponse.builder().item(item).build();
+    }
+
+    @Override
+    public UpdateItemResponse updateItem(UpdateItemRequest request) {
+        simulateLatency();
+        if (throttleProbability > 0 && ThreadLocalRandom.current().nextDouble() < throttleProbability) {
+            throttles.incrementAndGet();
+            throw (DynamoDbException) ProvisionedThroughputExceededException.builder()
+                    .message("The level of configured provisioned throughput for the table was exceeded")
+                    .statusCode(400)
+                    .awsErrorDetails(AwsErrorDetails.builder()
+                            .errorCode("ProvisionedThroughputExceededException")
+                            .build())
+                    .build();
+        }
+        Expression expression = new Expression(request.expressionAttributeNames(), request.expressionAttributeValues());
+        Map<String, AttributeValue> updated = new HashMap<>();
+        Map<String, AttributeValue> stored = table(request.tableName()).compute(request.key(), (key, old) -> {
+            Map<String, AttributeValue> current = old == null ? Map.of() : old;
+            if (request.conditionExpression() != null && !expression.condition(request.conditionExpression(), current)) {
+                ConditionalCheckFailedException.Builder failure = ConditionalCheckFailedException.builder()
+                        .message("The conditional request failed");
+                if (request.returnValuesOnConditionCheckFailure() == ReturnValuesOnConditionCheckFailure.ALL_OLD
+                        && old != null) {
+                    failure.item(old);
+                }
+                throw failure.build();
+            }
+            Map<String, AttributeValue> next = new HashMap<>(current);
+            next.putAll(key);
+            expression.apply(request.updateExpression(), next, updated);
+            return Map.copyOf(next);
+        });
+        updates.incrementAndGet();
+        UpdateItemResponse.Builder response = UpdateItemResponse.builder();
+        if (request.returnValues() == ReturnValue.UPDATED_NEW) {
+            Map<String, AttributeValue> attributes = new HashMap<>();
+            for (String name : updated.keySet()) {
+                attributes.put(name, stored.get(name));
+            }
+            response.attributes(attributes);
+        } else if (request.returnValues() == ReturnValue.ALL_NEW) {
+            response.attributes(stored);
+        }
+        if (request.returnConsumedCapacity() == ReturnConsumedCapacity.TOTAL) {
+            response.consumedCapacity(ConsumedCapacity.builder()
+                    .tableName(request.tableName())
+                    .capacityUnits(1.0)
+                    .build());
+        }
+        return response.build();
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private ConcurrentHashMap<Map<String, AttributeValue>, Map<String, AttributeValue>> table(String tableName) {
+        return tables.computeIfAbsent(tableName, name -> new ConcurrentHashMap<>());
+    }
+
+    private void simulateLatency() {
+        long nanos = latencyNanos;
+        if (jitterNanos > 0) {
+            nanos += ThreadLocalRandom.current().nextLong(jitterNanos);
+        }
+        if (nanos > 0) {
+            LockSupport.parkNanos(nanos);
+        }
+    }
+
+    /** Evaluates one request's expressions against its name and value placeholders. */
+    private static final class Expression {
+
+        private final Map<String, String> names;
+        private final Map<String, AttributeValue> values;
+
+        Expression(Map<String, String> names, Map<String, AttributeValue> values) {
+            this.names = names;
+            this.values = values;
+        }
+
+        boolean condition(String expression, Map<String, AttributeValue> item) {
+            List<String> alternatives = splitTopLevel(expression, " OR ");
+            if (alternatives.size() > 1) {
+                return alternatives.stream().anyMatch(alternative -> condition(alternative, item));
+            }
+            List<String> terms = splitTopLevel(expression, " AND ");
+            if (terms.size() > 1) {
+                return terms.stream().allMatch(term -> condition(term, item));
+            }
+            String term = expression.trim();
+            if (term.startsWith("(") && term.endsWith(")")) {
+                return condition(term.substring(1, term.length() - 1), item);
+            }
+            if (term.startsWith("attribute_exists(")) {
+                return resolve(arguments(term).get(0), item) != null;
+            }
+            if (term.startsWith("attribute_not_exists(")) {
+                return resolve(arguments(term).get(0), item) == null;
+            }
+            String operator = term.contains("<>") ? "<>" : "=";
+            String[] sides = term.split(operator, 2);
+            boolean equal = Objects.equals(
+                    operand(sides[0].trim(), item), operand(sides[1].trim(), item));
+            return operator.equals("=") == equal;
+        }
+
+        void apply(String expression, Map<String, AttributeValue> item, Map<String, AttributeValue> updated) {
+            String set = expression.trim();
+            String remove = null;
+            int removeAt = set.indexOf("REMOVE ");
+            if (removeAt >= 0) {
+                remove = set.substring(removeAt + "REMOVE ".length());
+                set = set.substring(0, removeAt).trim();
+            }
+            if (set.startsWith("SET ")) {
+                // evaluate every clause against the old item before writing any of them
+                Map<String, AttributeValue> assignments = new LinkedHashMap<>();
+                for (String clause : splitTopLevel(set.substring("SET ".length()), ",")) {
+                    String[] sides = clause.split("=", 2);
+                    assignments.put(sides[0].trim(), evaluate(sides[1].trim(), item));
+                }
+                for (Map.Entry<String, AttributeValue> assignment : assignments.entrySet()) {
+                    write(assignment.getKey(), assignment.getValue(), item);
+                    updated.put(topLevel(assignment.getKey()), item.get(topLevel(assignment.getKey())));
+                }
+            }
+            if (remove != null) {
+                for (String path : remove.split(",")) {
+                    write(path.trim(), null, item);
+                }
+            }
+        }
+
+        private AttributeValue evaluate(String expression, Map<String, AttributeValue> item) {
+            List<String> sum = splitTopLevel(expression, " + ");
+            List<String> difference = splitTopLevel(expression, " - ");
+            if (sum.size() == 2) {
+                return arithmetic(operand(sum.get(0), item), operand(sum.get(1), item), 1);
+            }
+            if (difference.size() == 2) {
+                return arithmetic(operand(difference.get(0), item), operand(difference.get(1), item), -1);
+            }
+            return operand(expression, item);
+        }
+
+        private static AttributeValue arithmetic(AttributeValue left, AttributeValue right, int sign) {
+            if (left == null || right == null || left.n() == null || right.n() == null) {
+                throw validation("An operand in the update expression has an incorrect data type");
+            }
+            return AttributeValue.fromN(Long.toString(Long.parseLong(left.n()) + sign * Long.parseLong(right.n())));
+        }
+
+        private AttributeValue operand(String operand, Map<String, AttributeValue> item) {
+            operand = operand.trim();
+            if (operand.startsWith("if_not_exists(")) {
+                List<String> arguments = arguments(operand);
+                AttributeValue existing = resolve(arguments.get(0), item);
+                return existing != null ? existing : operand(arguments.get(1), item);
+            }
+            if (operand.startsWith(":")) {
+                AttributeValue value = values.get(operand);
+                if (value == null) {
+                    throw validation("An expression attribute value used in expression is not defined: " + operand);
+                }
+                return value;
+            }
+            return resolve(operand, item);
+        }
+
+        private AttributeValue resolve(String path, Map<String, AttributeValue> item) {
+            String[] parts = path(path);
+            AttributeValue value = item.get(parts[0]);
+            if (parts.length == 1 || value == null) {
+                return value;
+            }
+            return value.hasM() ? value.m().get(parts[1]) : null;
+        }
+
+        private void write(String path, AttributeValue value, Map<String, AttributeValue> item) {
+            String[] parts = path(path);
+            if (parts.length == 1) {
+                if (value == null) {
+                    item.remove(parts[0]);
+                } else {
+                    item.put(parts[0], value);
+                }
+                return;
+            }
+            AttributeValue map = item.get(parts[0]);
+            if (map == null || !map.hasM()) {
+                throw validation("The document path provided in the update expression is invalid for update");
+            }
+            Map<String, AttributeValue> entries = new HashMap<>(map.m());
+            if (value == null) {
+                entries.remove(parts[1]);
+            } else {
+                entries.put(parts[1], value);
+            }
+            item.put(parts[0], AttributeValue.fromM(entries));
+        }
+
+        private String topLevel(String path) {
+            return path(path)[0];
+        }
+
+        private String[] path(String path) {
+            String[] parts = path.trim().split("\\.");
+            for (int i = 0; i < parts.length; i++) {
+                if (parts[i].startsWith("#")) {
+                    String name = names == null ? null : names.get(parts[i]);
+                    if (name == null) {
+                        throw validation("An expression attribute name used in the document path is not defined: "
+                                + parts[i]);
+                    }
+                    parts[i] = name;
+                }
+            }
+            return parts;
+        }
+
+        private static List<String> arguments(String call) {
+            return splitTopLevel(call.substring(call.indexOf('(') + 1, call.lastIndexOf(')')), ",");
+        }
+
+        private static List<String> splitTopLevel(String expression, String separator) {
+            List<String> parts = new ArrayList<>();
+            int depth = 0;
+            int start = 0;
+            for (int i = 0; i < expression.length(); i++) {
+                char c = expression.charAt(i);
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')') {
+                    depth--;
+                } else if (depth == 0 && expression.startsWith(separator, i)) {
+                    parts.add(expression.substring(start, i).trim());
+                    start = i + separator.length();
+                    i = start - 1;
+                }
+            }
+            parts.add(expression.substring(start).trim());
+            return parts;
+        }
+
+        private static DynamoDbException validation(String message) {
+            return (DynamoDbException) DynamoDbException.builder()
+                    .message(message)
+                    .statusCode(400)
+                    .awsErrorDetails(AwsErrorDetails.builder().errorCode("ValidationException").build())
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.boycottpro.companies;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class IncrementCompanyBoycottBatchHandlerTest {
+
+    @Mock
+    private DynamoDbClient dynamoDbClient;
+
+    @Mock
+    private Context context;
+
+    private IncrementCompanyBoycottBatchHandler handler() {
+        IncrementCompanyBoycottBatchHandler handler = new IncrementCompanyBoycottBatchHandler(dynamoDbClient);
+        handler.setMetricsOutput(null);
+        return handler;
+    }
+
+    private SQSEvent.SQSMessage message(String id, String body) {
+        SQSEvent.SQSMessage message = new SQSEvent.SQSMessage();
+        message.setMessageId(id);
+        message.setBody(body);
+        return message;
+    }
+
+    private SQSEvent event(SQSEvent.SQSMessage... messages) {
+        SQSEvent event = new SQSEvent();
+        event.setRecords(new ArrayList<>(List.of(messages)));
+        return event;
+    }
+
+    @Test
+    public void testCoalescesDeltasPerCompany() {
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+                .thenReturn(UpdateItemResponse.builder().build());
+        IncrementCompanyBoycottBatchHandler handler = handler();
+
+        SQSBatchResponse response = handler.handleRequest(event(
+                message("1", "{\"company_id\":\"a\",\"increment\":true}"),
+                message("2", "{\"company_id\":\"a\",\"increment\":true}"),
+                message("3", "{\"company_id\":\"a\",\"increment\":false}"),
+                message("4", "{\"company_id\":\"b\",\"increment\":true}"),
+                message("5", "{\"company_id\":\"b\",\"increment\":false}")), context);
+
+        assertTrue(response.getBatchItemFailures().isEmpty());
+        ArgumentCaptor<UpdateItemRequest> captor = ArgumentCaptor.forClass(UpdateItemRequest.class);
+        verify(dynamoDbClient, times(1)).updateItem(captor.capture());
+        assertEquals("a", captor.getValue().key().get("company_id").s());
+        assertEquals("1", captor.getValue().expressionAttributeValues().get(":delta").n());
+    }
+
+    @Test
+    public void testInvalidMessagesAreReportedAsFailures() {
+        IncrementCompanyBoycottBatchHandler handler = handler();
+
+        SQSBatchResponse response = handler.handleRequest(event(
+                message("1", "not json"),
+                message("2", "{\"company_id\":\"a\"}"),
+                message("3", "{\"company_id\":\"a\",\"increment\":\"maybe\"}")), context);
+
+        assertEquals(3, response.getBatchItemFailures().size());
+        verifyNoInteractions(dynamoDbClient);
+    }
+
+    @Test
+    public void testUnknownCompanyIsAcknowledged() {
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+                .thenAnswer(invocation -> {
+                    UpdateItemRequest request = invocation.getArgument(0);
+                    if (request.key().get("company_id").s().equals("missing")) {
+                        throw ConditionalCheckFailedException.builder().message("Not found").build();
+                    }
+                    return UpdateItemResponse.builder().build();
+                });
+        IncrementCompanyBoycottBatchHandler handler = handler();
+
+        SQSBatchResponse response = handler.handleRequest(event(
+                message("1", "{\"company_id\":\"missing\",\"increment\":true}"),
+                message("2", "{\"company_id\":\"ok\",\"increment\":true}"),
+                message("3", "{\"company_id\":\"missing\",\"increment\":true}")), context);
+
+        assertTrue(response.getBatchItemFailures().isEmpty());
+        verify(dynamoDbClient, times(2)).updateItem(any(UpdateItemRequest.class));
+    }
+
+    @Test
+    public void testThrottledUpdateReportsEveryMessageForCompany() {
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+                .thenAnswer(invocation -> {
+                    UpdateItemRequest request = invocation.getArgument(0);
+                    if (request.key().get("company_id").s().equals("hot")) {
+                        throw WriteBehindJournalTest.throttle();
+                    }
+                    return UpdateItemResponse.builder().build();
+                });
+        IncrementCompanyBoycottBatchHandler handler = handler();
+
+        SQSBatchResponse response = handler.handleRequest(event(
+                message("1", "{\"company_id\":\"hot\",\"increment\":true}"),
+                message("2", "{\"company_id\":\"ok\",\"increment\":true}"),
+                message("3", "{\"company_id\":\"hot\",\"increment\":true}")), context);
+
+        assertEquals(2, response.getBatchItemFailures().size());
+        assertEquals("1", response.getBatchItemFailures().get(0).getItemIdentifier());
+        assertEquals("3", response.getBatchItemFailures().get(1).getItemIdentifier());
+    }
+
+    @Test
+    public void testNonRetryableErrorIsAcknowledged() {
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+                .thenThrow(DynamoDbException.builder().message("Invalid expression").statusCode(400).build());
+        IncrementCompanyBoycottBatchHandler handler = handler();
+
+        SQSBatchResponse response = handler.handleRequest(event(
+                message("1", "{\"company_id\":\"a\",\"increment\":true}")), context);
+
+        assertTrue(response.getBatchItemFailures().isEmpty());
+    }
+
+    @Test
+    public void testServerErrorIsRetried() {
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+                .thenThrow(DynamoDbException.builder().message("Internal error").statusCode(500).build());
+        IncrementCompanyBoycottBatchHandler handler = handler();
+
+        SQSBatchResponse response = handler.handleRequest(event(
+                message("1", "{\"company_id\":\"a\",\"increment\":true}")), context);
+
+        assertEquals(1, response.getBatchItemFailures().size());
+    }
+
+    @Test
+    public void testNullEvent() {
+        IncrementCompanyBoycottBatchHandler handler = handler();
+
+        SQSBatchResponse response = handler.handleRequest(null, context);
+
+        assertTrue(response.getBatchItemFailures().isEmpty());
+    }
+}
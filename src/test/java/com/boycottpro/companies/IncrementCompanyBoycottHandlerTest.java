@@ -2,8 +2,10 @@ package com.boycottpro.companies;
 
 import com.amazonaws.services.lambda.runtime.Context;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -13,6 +15,7 @@ import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -34,6 +37,11 @@ public class IncrementCompanyBoycottHandlerTest {
 
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    @BeforeEach
+    public void disableMetrics() {
+        handler.setMetricsOutput(null);
+    }
+
     @Test
     public void testSuccessfulIncrement() throws Exception {
         APIGatewayProxyRequestEvent event = new APIGatewayProxyRequestEvent();
@@ -117,8 +125,34 @@ public class IncrementCompanyBoycottHandlerTest {
 
         APIGatewayProxyResponseEvent response = handler.handleRequest(event, context);
 
-        assertEquals(500, response.getStatusCode());
-        assertTrue(response.getBody().contains("Unexpected server error"));
+        assertEquals(404, response.getStatusCode());
+        assertTrue(response.getBody().contains("company not found"));
+    }
+
+    @Test
+    public void testUnknownCompanyIsRejectedWithoutSecondWrite() {
+        APIGatewayProxyRequestEvent event = new APIGatewayProxyRequestEvent();
+        Map<String, String> claims = Map.of("sub", "11111111-2222-3333-4444-555555555555");
+        Map<String, Object> authorizer = new HashMap<>();
+        authorizer.put("claims", claims);
+
+        APIGatewayProxyRequestEvent.ProxyRequestContext rc = new APIGatewayProxyRequestEvent.ProxyRequestContext();
+        rc.setAuthorizer(authorizer);
+        event.setRequestContext(rc);
+        Map<String, String> pathParams = new HashMap<>();
+        pathParams.put("company_id", "nonexistent-company");
+        pathParams.put("increment", "true");
+        event.setPathParameters(pathParams);
+
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+                .thenThrow(ConditionalCheckFailedException.builder().message("Not found").build());
+
+        APIGatewayProxyResponseEvent first = handler.handleRequest(event, context);
+        APIGatewayProxyResponseEvent second = handler.handleRequest(event, context);
+
+        assertEquals(404, first.getStatusCode());
+        assertEquals(404, second.getStatusCode());
+        verify(dynamoDbClient, times(1)).updateItem(any(UpdateItemRequest.class));
     }
 
     @Test
@@ -149,6 +183,7 @@ public class IncrementCompanyBoycottHandlerTest {
     public void testUnauthorizedUser() {
         // Test the unauthorized block coverage
         handler = new IncrementCompanyBoycottHandler(dynamoDbClient);
+        handler.setMetricsOutput(null);
 
         // Create event without JWT token (or invalid token that returns null sub)
         APIGatewayProxyRequestEvent event = new APIGatewayProxyRequestEvent();
@@ -164,6 +199,7 @@ public class IncrementCompanyBoycottHandlerTest {
     public void testJsonProcessingExceptionInResponse() throws Exception {
         // Test JsonProcessingException coverage in response method by using reflection
         handler = new IncrementCompanyBoycottHandler(dynamoDbClient);
+        handler.setMetricsOutput(null);
 
         // Use reflection to access the private response method
         java.lang.reflect.Method responseMethod = IncrementCompanyBoycottHandler.class.getDeclaredMethod("response", int.class, Object.class);
@@ -342,6 +378,7 @@ public class IncrementCompanyBoycottHandlerTest {
     public void testUnusedResponseMethod() throws Exception {
         // Test lines 122-135: Unused response(int, String, String) method
         handler = new IncrementCompanyBoycottHandler(dynamoDbClient);
+        handler.setMetricsOutput(null);
 
         // Use reflection to access the private response method with 3 parameters
         java.lang.reflect.Method responseMethod = IncrementCompanyBoycottHandler.class.getDeclaredMethod(
@@ -360,6 +397,7 @@ public class IncrementCompanyBoycottHandlerTest {
     public void testUnusedResponseMethodJsonException() throws Exception {
         // Test JsonProcessingException in unused response(int, String, String) method
         handler = new IncrementCompanyBoycottHandler(dynamoDbClient);
+        handler.setMetricsOutput(null);
 
         // Use reflection to access the private response method with 3 parameters
         java.lang.reflect.Method responseMethod = IncrementCompanyBoycottHandler.class.getDeclaredMethod(
@@ -375,4 +413,335 @@ public class IncrementCompanyBoycottHandlerTest {
         assertTrue(response.getBody().contains("Error details"));
     }
 
+    @Test
+    public void testBulkIncrement() {
+        APIGatewayProxyRequestEvent event = new APIGatewayProxyRequestEvent();
+        Map<String, String> claims = Map.of("sub", "11111111-2222-3333-4444-555555555555");
+        Map<String, Object> authorizer = new HashMap<>();
+        authorizer.put("claims", claims);
+
+        APIGatewayProxyRequestEvent.ProxyRequestContext rc = new APIGatewayProxyRequestEvent.ProxyRequestContext();
+        rc.setAuthorizer(authorizer);
+        event.setRequestContext(rc);
+        event.setBody("{\"items\":[{\"company_id\":\"a\",\"increment\":true},"
+                + "{\"company_id\":\"b\",\"increment\":false}]}");
+
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+                .thenReturn(UpdateItemResponse.builder().build());
+
+        APIGatewayProxyResponseEvent response = handler.handleRequest(event, context);
+
+        assertEquals(200, response.getStatusCode());
+        assertTrue(response.getBody().contains("\"results\""));
+        assertTrue(response.getBody().contains("\"status\":\"updated\""));
+        verify(dynamoDbClient, times(2)).updateItem(any(UpdateItemRequest.class));
+    }
+
+    @Test
+    public void testBulkItemsAreRateLimited() {
+        handler.setToggleRateLimiter(new ToggleRateLimiter(1, 6, 100, dynamoDbClient, null, () -> 0L));
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+                .thenReturn(UpdateItemResponse.builder().build());
+        assertEquals(200, handler.handleRequest(incrementEvent(null), context).getStatusCode());
+
+        APIGatewayProxyRequestEvent event = incrementEvent(null);
+        event.setPathParameters(null);
+        event.setBody("{\"items\":[{\"company_id\":\"test-company\",\"increment\":true}]}");
+        APIGatewayProxyResponseEvent response = handler.handleRequest(event, context);
+
+        assertEquals(429, response.getStatusCode());
+        assertEquals("10", response.getHeaders().get("Retry-After"));
+        verify(dynamoDbClient, times(1)).updateItem(any(UpdateItemRequest.class));
+
+        event.setBody("{\"items\":[{\"company_id\":\"test-company\",\"increment\":true},"
+                + "{\"company_id\":\"other-company\",\"increment\":true}]}");
+        response = handler.handleRequest(event, context);
+
+        assertEquals(200, response.getStatusCode());
+        assertTrue(response.getBody().contains("\"status\":\"rate_limited\""));
+        assertTrue(response.getBody().contains("\"status\":\"updated\""));
+        assertEquals("10", response.getHeaders().get("Retry-After"));
+    }
+
+    @Test
+    public void testBulkIncrementInvalidBody() {
+        APIGatewayProxyRequestEvent event = new APIGatewayProxyRequestEvent();
+        Map<String, String> claims = Map.of("sub", "11111111-2222-3333-4444-555555555555");
+        Map<String, Object> authorizer = new HashMap<>();
+        authorizer.put("claims", claims);
+
+        APIGatewayProxyRequestEvent.ProxyRequestContext rc = new APIGatewayProxyRequestEvent.ProxyRequestContext();
+        rc.setAuthorizer(authorizer);
+        event.setRequestContext(rc);
+        event.setBody("{\"items\":[]}");
+
+        APIGatewayProxyResponseEvent response = handler.handleRequest(event, context);
+
+        assertEquals(400, response.getStatusCode());
+        assertTrue(response.getBody().contains("items not present"));
+    }
+
+    @Test
+    public void testPrimingHooksIssueNonWritingRequest() throws Exception {
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+                .thenThrow(ConditionalCheckFailedException.builder().message("Not found").build());
+
+        ToggleRateLimiter limiter = mock(ToggleRateLimiter.class);
+        handler.setToggleRateLimiter(limiter);
+
+        handler.beforeCheckpoint(null);
+        handler.afterRestore(null);
+
+        ArgumentCaptor<UpdateItemRequest> captor = ArgumentCaptor.forClass(UpdateItemRequest.class);
+        verify(dynamoDbClient, times(2)).updateItem(captor.capture());
+        assertEquals(IncrementCompanyBoycottHandler.PRIMING_COMPANY_ID,
+                captor.getValue().key().get("company_id").s());
+        assertEquals("attribute_exists(company_id)", captor.getValue().conditionExpression());
+        assertEquals("0", captor.getValue().expressionAttributeValues().get(":delta").n());
+        // priming bypasses the request pipeline and leaves its state untouched
+        verifyNoInteractions(limiter);
+        assertEquals(0, handler.getHotKeyTracker().estimate(IncrementCompanyBoycottHandler.PRIMING_COMPANY_ID));
+    }
+
+    @Test
+    public void testPrecomputedBodiesMatchSerializedMessages() throws Exception {
+        APIGatewayProxyRequestEvent event = new APIGatewayProxyRequestEvent();
+        Map<String, String> claims = Map.of("sub", "11111111-2222-3333-4444-555555555555");
+        Map<String, Object> authorizer = new HashMap<>();
+        authorizer.put("claims", claims);
+
+        APIGatewayProxyRequestEvent.ProxyRequestContext rc = new APIGatewayProxyRequestEvent.ProxyRequestContext();
+        rc.setAuthorizer(authorizer);
+        event.setRequestContext(rc);
+        event.setPathParameters(new HashMap<>());
+
+        APIGatewayProxyResponseEvent badRequest = handler.handleRequest(event, context);
+        APIGatewayProxyResponseEvent unauthorized = handler.handleRequest(new APIGatewayProxyRequestEvent(), context);
+
+        assertEquals(objectMapper.writeValueAsString(new com.boycottpro.models.ResponseMessage(400,
+                        "sorry, there was an error processing your request", "company_id not present")),
+                badRequest.getBody());
+        assertEquals(objectMapper.writeValueAsString(Map.of("message", "Unauthorized")), unauthorized.getBody());
+        assertEquals("application/json", badRequest.getHeaders().get("Content-Type"));
+    }
+
+    @Test
+    public void testThrottledIncrementIsDeferred() {
+        handler.setWriteBehindJournal(new WriteBehindJournal(true, 100, null, null));
+        APIGatewayProxyRequestEvent event = new APIGatewayProxyRequestEvent();
+        Map<String, String> claims = Map.of("sub", "11111111-2222-3333-4444-555555555555");
+        Map<String, Object> authorizer = new HashMap<>();
+        authorizer.put("claims", claims);
+
+        APIGatewayProxyRequestEvent.ProxyRequestContext rc = new APIGatewayProxyRequestEvent.ProxyRequestContext();
+        rc.setAuthorizer(authorizer);
+        event.setRequestContext(rc);
+        Map<String, String> pathParams = new HashMap<>();
+        pathParams.put("company_id", "test-company");
+        pathParams.put("increment", "true");
+        event.setPathParameters(pathParams);
+
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+                .thenThrow(WriteBehindJournalTest.throttle());
+
+        APIGatewayProxyResponseEvent response = handler.handleRequest(event, context);
+
+        assertEquals(202, response.getStatusCode());
+        assertTrue(response.getBody().contains("deferred"));
+    }
+
+    private APIGatewayProxyRequestEvent incrementEvent(String ifMatch) {
+        APIGatewayProxyRequestEvent event = new APIGatewayProxyRequestEvent();
+        Map<String, String> claims = Map.of("sub", "11111111-2222-3333-4444-555555555555");
+        Map<String, Object> authorizer = new HashMap<>();
+        authorizer.put("claims", claims);
+
+        APIGatewayProxyRequestEvent.ProxyRequestContext rc = new APIGatewayProxyRequestEvent.ProxyRequestContext();
+        rc.setAuthorizer(authorizer);
+        event.setRequestContext(rc);
+        Map<String, String> pathParams = new HashMap<>();
+        pathParams.put("company_id", "test-company");
+        pathParams.put("increment", "true");
+        event.setPathParameters(pathParams);
+        if (ifMatch != null) {
+            event.setHeaders(Map.of("If-Match", ifMatch));
+        }
+        return event;
+    }
+
+    @Test
+    public void testIncrementReturnsUpdatedCount() throws Exception {
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+                .thenReturn(UpdateItemResponse.builder()
+                        .attributes(Map.of("boycott_count", AttributeValue.fromN("42")))
+                        .build());
+
+        APIGatewayProxyResponseEvent response = handler.handleRequest(incrementEvent(null), context);
+
+        assertEquals(200, response.getStatusCode());
+        Map<?, ?> body = objectMapper.readValue(response.getBody(), Map.class);
+        assertEquals("company record updated = true", body.get("message"));
+        assertEquals(42, body.get("boycott_count"));
+        ArgumentCaptor<UpdateItemRequest> captor = ArgumentCaptor.forClass(UpdateItemRequest.class);
+        verify(dynamoDbClient).updateItem(captor.capture());
+        assertEquals(ReturnValue.UPDATED_NEW, captor.getValue().returnValues());
+    }
+
+    @Test
+    public void testIfMatchAddsExpectedCountCondition() {
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+                .thenReturn(UpdateItemResponse.builder()
+                        .attributes(Map.of("boycott_count", AttributeValue.fromN("8")))
+                        .build());
+
+        APIGatewayProxyResponseEvent response = handler.handleRequest(incrementEvent("\"7\""), context);
+
+        assertEquals(200, response.getStatusCode());
+        ArgumentCaptor<UpdateItemRequest> captor = ArgumentCaptor.forClass(UpdateItemRequest.class);
+        verify(dynamoDbClient).updateItem(captor.capture());
+        assertTrue(captor.getValue().conditionExpression().contains("boycott_count = :expected"));
+        assertEquals("7", captor.getValue().expressionAttributeValues().get(":expected").n());
+    }
+
+    @Test
+    public void testIfMatchMismatchReturnsCurrentCount() throws Exception {
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+                .thenThrow(ConditionalCheckFailedException.builder()
+                        .message("The conditional request failed")
+                        .item(Map.of("company_id", AttributeValue.fromS("test-company"),
+                                "boycott_count", AttributeValue.fromN("9")))
+                        .build());
+
+        APIGatewayProxyResponseEvent response = handler.handleRequest(incrementEvent("7"), context);
+
+        assertEquals(412, response.getStatusCode());
+        Map<?, ?> body = objectMapper.readValue(response.getBody(), Map.class);
+        assertEquals(9, body.get("boycott_count"));
+    }
+
+    @Test
+    public void testInvalidIfMatch() {
+        APIGatewayProxyResponseEvent response = handler.handleRequest(incrementEvent("abc"), context);
+
+        assertEquals(400, response.getStatusCode());
+        assertTrue(response.getBody().contains("If-Match not acceptable value"));
+    }
+
+    private APIGatewayProxyRequestEvent fanOutEvent() {
+        APIGatewayProxyRequestEvent event = incrementEvent(null);
+        event.setQueryStringParameters(Map.of("fanout", "true", "cause_id", "cause-1"));
+        handler.setFanOut(new BoycottFanOut(dynamoDbClient,
+                new BoycottCountUpdater(dynamoDbClient, CompanyShardConfig.parse(""), "company_boycott_shards"),
+                List.of(new BoycottFanOut.Target("cause", "causes", "cause_id", "cause_id", "boycott_count"),
+                        new BoycottFanOut.Target("user", "users", "user_id", "sub", "boycott_count"))));
+        return event;
+    }
+
+    private static TransactionCanceledException cancelled(CancellationReason... reasons) {
+        return TransactionCanceledException.builder()
+                .message("Transaction cancelled")
+                .cancellationReasons(reasons)
+                .build();
+    }
+
+    @Test
+    public void testFanOutWritesAllCountersInOneTransaction() {
+        APIGatewayProxyResponseEvent response = handler.handleRequest(fanOutEvent(), context);
+
+        assertEquals(200, response.getStatusCode());
+        ArgumentCaptor<TransactWriteItemsRequest> captor = ArgumentCaptor.forClass(TransactWriteItemsRequest.class);
+        verify(dynamoDbClient).transactWriteItems(captor.capture());
+        List<TransactWriteItem> items = captor.getValue().transactItems();
+        assertEquals(3, items.size());
+        assertEquals("companies", items.get(0).update().tableName());
+        assertEquals("cause-1", items.get(1).update().key().get("cause_id").s());
+        assertEquals("11111111-2222-3333-4444-555555555555", items.get(2).update().key().get("user_id").s());
+        verify(dynamoDbClient, never()).updateItem(any(UpdateItemRequest.class));
+    }
+
+    @Test
+    public void testFanOutNamesFailedTarget() throws Exception {
+        when(dynamoDbClient.transactWriteItems(any(TransactWriteItemsRequest.class))).thenThrow(cancelled(
+                CancellationReason.builder().code("None").build(),
+                CancellationReason.builder().code("ConditionalCheckFailed").build(),
+                CancellationReason.builder().code("None").build()));
+
+        APIGatewayProxyResponseEvent response = handler.handleRequest(fanOutEvent(), context);
+
+        assertEquals(409, response.getStatusCode());
+        Map<?, ?> body = objectMapper.readValue(response.getBody(), Map.class);
+        List<?> failed = (List<?>) body.get("failed");
+        assertEquals(1, failed.size());
+        assertEquals(Map.of("target", "cause", "table", "causes", "reason", "ConditionalCheckFailed"), failed.get(0));
+    }
+
+    @Test
+    public void testFanOutThrottlingIsRetryLater() throws Exception {
+        when(dynamoDbClient.transactWriteItems(any(TransactWriteItemsRequest.class))).thenThrow(cancelled(
+                CancellationReason.builder().code("None").build(),
+                CancellationReason.builder().code("ThrottlingError").build(),
+                CancellationReason.builder().code("TransactionConflict").build()));
+
+        APIGatewayProxyResponseEvent response = handler.handleRequest(fanOutEvent(), context);
+
+        assertEquals(503, response.getStatusCode());
+        assertEquals("1", response.getHeaders().get("Retry-After"));
+        Map<?, ?> body = objectMapper.readValue(response.getBody(), Map.class);
+        assertEquals(2, ((List<?>) body.get("failed")).size());
+    }
+
+    @Test
+    public void testFanOutConditionFailureWinsOverThrottling() {
+        when(dynamoDbClient.transactWriteItems(any(TransactWriteItemsRequest.class))).thenThrow(cancelled(
+                CancellationReason.builder().code("None").build(),
+                CancellationReason.builder().code("ConditionalCheckFailed").build(),
+                CancellationReason.builder().code("ThrottlingError").build()));
+
+        APIGatewayProxyResponseEvent response = handler.handleRequest(fanOutEvent(), context);
+
+        assertEquals(409, response.getStatusCode());
+        assertNull(response.getHeaders().get("Retry-After"));
+    }
+
+    @Test
+    public void testFanOutMissingCompanyIsNotFound() {
+        when(dynamoDbClient.transactWriteItems(any(TransactWriteItemsRequest.class))).thenThrow(cancelled(
+                CancellationReason.builder().code("ConditionalCheckFailed").build(),
+                CancellationReason.builder().code("None").build(),
+                CancellationReason.builder().code("None").build()));
+
+        APIGatewayProxyResponseEvent response = handler.handleRequest(fanOutEvent(), context);
+
+        assertEquals(404, response.getStatusCode());
+        assertTrue(response.getBody().contains("company not found"));
+    }
+
+    @Test
+    public void testFanOutMissingSourceIsBadRequest() {
+        APIGatewayProxyRequestEvent event = fanOutEvent();
+        event.setQueryStringParameters(Map.of("fanout", "true"));
+
+        APIGatewayProxyResponseEvent response = handler.handleRequest(event, context);
+
+        assertEquals(400, response.getStatusCode());
+        assertTrue(response.getBody().contains("cause_id not present"));
+        verifyNoInteractions(dynamoDbClient);
+    }
+
+    @Test
+    public void testToggleRateLimitReturnsRetryAfter() {
+        handler.setToggleRateLimiter(new ToggleRateLimiter(2, 6, 100, dynamoDbClient, null, () -> 0L));
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+                .thenReturn(UpdateItemResponse.builder().build());
+
+        assertEquals(200, handler.handleRequest(incrementEvent(null), context).getStatusCode());
+        assertEquals(200, handler.handleRequest(incrementEvent(null), context).getStatusCode());
+        APIGatewayProxyResponseEvent response = handler.handleRequest(incrementEvent(null), context);
+
+        assertEquals(429, response.getStatusCode());
+        assertEquals("10", response.getHeaders().get("Retry-After"));
+        assertTrue(response.getBody().contains("too many toggles"));
+        verify(dynamoDbClient, times(2)).updateItem(any(UpdateItemRequest.class));
+    }
+
 }
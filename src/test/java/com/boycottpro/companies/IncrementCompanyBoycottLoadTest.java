@@ -0,0 +1,222 @@
+package com.boycottpro.companies;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.io.PrintStream;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Drives the handler against {@link InMemoryDynamoDbClient} with many
+ * concurrent toggles over a Zipfian company distribution, so a few hot
+ * companies see most of the contention, and checks no update is lost.
+ * The load run is tagged "load" and only runs with -Pload-test; the
+ * in-memory fake's own tests run with the default suite.
+ */
+public class IncrementCompanyBoycottLoadTest {
+
+    private static final int COMPANIES = 200;
+    private static final int OPERATIONS = 10000;
+    private static final int THREADS = 32;
+    private static final double ZIPF_EXPONENT = 1.1;
+
+    // where the summary line goes; handler output is switched off per handler instead
+    private final PrintStream report = System.out;
+
+    /** Samples ranks 0..n-1 with probability proportional to 1 / (rank + 1)^exponent. */
+    static final class Zipf {
+        private final double[] cdf;
+
+        Zipf(int n, double exponent) {
+            cdf = new double[n];
+            double total = 0;
+            for (int i = 0; i < n; i++) {
+                total += 1 / Math.pow(i + 1, exponent);
+                cdf[i] = total;
+            }
+            for (int i = 0; i < n; i++) {
+                cdf[i] /= total;
+            }
+        }
+
+        int next() {
+            int rank = Arrays.binarySearch(cdf, ThreadLocalRandom.current().nextDouble());
+            return Math.min(rank >= 0 ? rank : -rank - 1, cdf.length - 1);
+        }
+    }
+
+    private static APIGatewayProxyRequestEvent event(String companyId, boolean increment) {
+        APIGatewayProxyRequestEvent event = new APIGatewayProxyRequestEvent();
+        Map<String, Object> authorizer = new HashMap<>();
+        authorizer.put("claims", Map.of("sub", "11111111-2222-3333-4444-555555555555"));
+        APIGatewayProxyRequestEvent.ProxyRequestContext rc = new APIGatewayProxyRequestEvent.ProxyRequestContext();
+        rc.setAuthorizer(authorizer);
+        event.setRequestContext(rc);
+        event.setPathParameters(Map.of("company_id", companyId, "increment", Boolean.toString(increment)));
+        return event;
+    }
+
+    private static long count(InMemoryDynamoDbClient dynamoDb, String companyId) {
+        Map<String, AttributeValue> item = dynamoDb.item(BoycottCountUpdater.TABLE_NAME,
+                Map.of("company_id", AttributeValue.fromS(companyId)));
+        return BoycottCountUpdater.countOf(item);
+    }
+
+    @Test
+    @Tag("load")
+    public void testConcurrentTogglesKeepExactCounts() throws Exception {
+        InMemoryDynamoDbClient dynamoDb = new InMemoryDynamoDbClient();
+        for (int i = 0; i < COMPANIES; i++) {
+            dynamoDb.putCompany("company-" + i, 0);
+        }
+        dynamoDb.setLatency(100, 200, TimeUnit.MICROSECONDS);
+        dynamoDb.setThrottleProbability(0.05);
+        AtomicLong clockOffset = new AtomicLong();
+        WriteBehindJournal journal = new WriteBehindJournal(true, OPERATIONS, null, null,
+                () -> System.currentTimeMillis() + clockOffset.get());
+        IncrementCompanyBoycottHandler handler = new IncrementCompanyBoycottHandler(dynamoDb);
+        handler.setWriteBehindJournal(journal);
+        // one sub drives every request, so per-user limits would reject most of the run
+        handler.setToggleRateLimiter(null);
+        // every invocation would write an EMF line; keep them out of the test log
+        handler.setMetricsOutput(null);
+
+        Zipf zipf = new Zipf(COMPANIES, ZIPF_EXPONENT);
+        Map<String, LongAdder> expected = new ConcurrentHashMap<>();
+        Set<String> unknownIds = ConcurrentHashMap.newKeySet();
+        Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        long[] latencies = new long[OPERATIONS];
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        long started;
+        long elapsed;
+        try {
+            Future<?>[] futures = new Future<?>[OPERATIONS];
+            started = System.nanoTime();
+            for (int i = 0; i < OPERATIONS; i++) {
+                int op = i;
+                futures[i] = pool.submit(() -> {
+                    boolean unknown = ThreadLocalRandom.current().nextInt(100) == 0;
+                    String companyId = unknown ? "unknown-" + op : "company-" + zipf.next();
+                    boolean increment = ThreadLocalRandom.current().nextInt(10) < 6;
+                    long begin = System.nanoTime();
+                    APIGatewayProxyResponseEvent response = handler.handleRequest(event(companyId, increment), null);
+                    latencies[op] = System.nanoTime() - begin;
+                    statuses.computeIfAbsent(response.getStatusCode(), k -> new LongAdder()).increment();
+                    if (unknown) {
+                        unknownIds.add(companyId);
+                    } else if (response.getStatusCode() == 200 || response.getStatusCode() == 202) {
+                        expected.computeIfAbsent(companyId, k -> new LongAdder()).add(increment ? 1 : -1);
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            elapsed = System.nanoTime() - started;
+        } finally {
+            pool.shutdown();
+        }
+
+        dynamoDb.setThrottleProbability(0);
+        clockOffset.addAndGet(WriteBehindJournal.MAX_BACKOFF_MILLIS + 1);
+        journal.drain(new BoycottCountUpdater(dynamoDb));
+        assertFalse(journal.hasPending());
+
+        for (Integer status : statuses.keySet()) {
+            assertTrue(List.of(200, 202, 404).contains(status), "unexpected status " + status);
+        }
+        for (int i = 0; i < COMPANIES; i++) {
+            String companyId = "company-" + i;
+            LongAdder delta = expected.get(companyId);
+            assertEquals(delta == null ? 0 : delta.sum(), count(dynamoDb, companyId), companyId);
+        }
+        for (String companyId : unknownIds) {
+            assertNull(dynamoDb.item(BoycottCountUpdater.TABLE_NAME,
+                    Map.of("company_id", AttributeValue.fromS(companyId))), companyId);
+        }
+
+        Arrays.sort(latencies);
+        report.printf("load test: %d ops over %d companies in %d ms (%.0f ops/s), p50=%d us p99=%d us max=%d us, "
+                        + "throttled=%d statuses=%s%n",
+                OPERATIONS, COMPANIES, TimeUnit.NANOSECONDS.toMillis(elapsed),
+                OPERATIONS / (elapsed / 1e9),
+                TimeUnit.NANOSECONDS.toMicros(latencies[OPERATIONS / 2]),
+                TimeUnit.NANOSECONDS.toMicros(latencies[OPERATIONS * 99 / 100]),
+                TimeUnit.NANOSECONDS.toMicros(latencies[OPERATIONS - 1]),
+                dynamoDb.throttleCount(), statuses);
+    }
+
+    @Test
+    public void testFakeRejectsUnknownCompanyWithoutCreatingIt() {
+        InMemoryDynamoDbClient dynamoDb = new InMemoryDynamoDbClient();
+
+        assertThrows(ConditionalCheckFailedException.class,
+                () -> new BoycottCountUpdater(dynamoDb).applyDelta("missing-company", 1));
+        assertNull(dynamoDb.item(BoycottCountUpdater.TABLE_NAME,
+                Map.of("company_id", AttributeValue.fromS("missing-company"))));
+    }
+
+    @Test
+    public void testFakeReturnsOldItemWhenExpectedCountIsStale() {
+        InMemoryDynamoDbClient dynamoDb = new InMemoryDynamoDbClient();
+        dynamoDb.putCompany("test-company", 7);
+        BoycottCountUpdater updater = new BoycottCountUpdater(dynamoDb);
+
+        ConditionalCheckFailedException e = assertThrows(ConditionalCheckFailedException.class,
+                () -> updater.applyDelta("test-company", 1, 6));
+        assertEquals(7, BoycottCountUpdater.countOf(e.item()));
+
+        assertEquals(8, BoycottCountUpdater.updatedCount(updater.applyDelta("test-company", 1, 7)));
+    }
+
+    @Test
+    public void testFakeRequiresBucketMapsLikeDynamoDb() {
+        InMemoryDynamoDbClient dynamoDb = new InMemoryDynamoDbClient();
+        dynamoDb.putCompany("test-company", 3);
+        BoycottCountUpdater updater = new BoycottCountUpdater(dynamoDb);
+        updater.setTimeBuckets(new TimeBuckets(Clock.systemUTC(), 48, 30));
+
+        updater.applyDelta("test-company", -1);
+
+        // the rejected first attempt is not counted
+        assertEquals(2, dynamoDb.updateCount());
+        assertEquals(2, count(dynamoDb, "test-company"));
+        assertEquals(Map.of(TimeBuckets.hourKey(Instant.now()), -1L),
+                updater.readHourlyDeltas("test-company"));
+    }
+
+    @Test
+    public void testFakeRejectsUndefinedPlaceholders() {
+        InMemoryDynamoDbClient dynamoDb = new InMemoryDynamoDbClient();
+        dynamoDb.putCompany("test-company", 0);
+
+        assertThrows(DynamoDbException.class,
+                () -> dynamoDb.updateItem(UpdateItemRequest.builder()
+                        .tableName(BoycottCountUpdater.TABLE_NAME)
+                        .key(Map.of("company_id", AttributeValue.fromS("test-company")))
+                        .updateExpression("SET boycott_count = boycott_count + :missing")
+                        .build()));
+    }
+}
@@ -0,0 +1,146 @@
+package com.boycottpro.companies;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IncrementCompanyBoycottServerTest {
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private InMemoryDynamoDbClient dynamoDb;
+    private IncrementCompanyBoycottServer server;
+
+    @BeforeEach
+    public void startServer() throws Exception {
+        dynamoDb = new InMemoryDynamoDbClient();
+        dynamoDb.putCompany("test-company", 0);
+        IncrementCompanyBoycottHandler handler = new IncrementCompanyBoycottHandler(dynamoDb);
+        handler.setToggleRateLimiter(null);
+        handler.setMetricsOutput(null);
+        handler.enableWriteCoalescing(50, Executors.newCachedThreadPool());
+        server = new IncrementCompanyBoycottServer(handler, new InetSocketAddress("127.0.0.1", 0),
+                IncrementCompanyBoycottServer.DEFAULT_SUB_HEADER);
+        server.start();
+    }
+
+    @AfterEach
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.port() + path));
+    }
+
+    private HttpRequest increment(String companyId, String increment) {
+        return request("/companies/" + companyId + "/" + increment)
+                .header(IncrementCompanyBoycottServer.DEFAULT_SUB_HEADER, "11111111-2222-3333-4444-555555555555")
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+    }
+
+    @Test
+    public void testIncrementIsDispatchedToHandler() throws Exception {
+        HttpResponse<String> response = client.send(increment("test-company", "true"),
+                HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body().contains("company record updated = true"));
+        assertEquals("application/json", response.headers().firstValue("Content-Type").orElse(null));
+    }
+
+    @Test
+    public void testMissingIdentityIsUnauthorized() throws Exception {
+        HttpResponse<String> response = client.send(request("/companies/test-company/true")
+                .POST(HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(401, response.statusCode());
+    }
+
+    @Test
+    public void testConcurrentRequestsAreCoalesced() throws Exception {
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            responses.add(client.sendAsync(increment("test-company", "true"), HttpResponse.BodyHandlers.ofString()));
+        }
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            assertEquals(200, response.join().statusCode());
+        }
+
+        assertEquals(20, BoycottCountUpdater.countOf(dynamoDb.item(BoycottCountUpdater.TABLE_NAME,
+                Map.of("company_id", AttributeValue.fromS("test-company")))));
+        assertTrue(dynamoDb.updateCount() < 20, "writes = " + dynamoDb.updateCount());
+    }
+
+    @Test
+    public void testHealthAndUnknownRoutes() throws Exception {
+        assertEquals(200, client.send(request("/health").GET().build(),
+                HttpResponse.BodyHandlers.ofString()).statusCode());
+        assertEquals(404, client.send(request("/other").GET().build(),
+                HttpResponse.BodyHandlers.ofString()).statusCode());
+        assertEquals(405, client.send(request("/companies/test-company/true").GET().build(),
+                HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    @Test
+    public void testHandlerExceptionIsServerError() throws Exception {
+        IncrementCompanyBoycottHandler failing = new IncrementCompanyBoycottHandler(dynamoDb) {
+            @Override
+            public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent event, Context context) {
+                throw new IllegalStateException("boom");
+            }
+        };
+        IncrementCompanyBoycottServer failingServer = new IncrementCompanyBoycottServer(failing,
+                new InetSocketAddress("127.0.0.1", 0), IncrementCompanyBoycottServer.DEFAULT_SUB_HEADER);
+        failingServer.start();
+        try {
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(
+                            URI.create("http://127.0.0.1:" + failingServer.port() + "/companies/test-company/true"))
+                    .POST(HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.ofString());
+
+            assertEquals(500, response.statusCode());
+            assertEquals("application/json", response.headers().firstValue("Content-Type").orElse(null));
+            assertTrue(response.body().contains("Unexpected server error: boom"));
+        } finally {
+            failingServer.stop(0);
+        }
+    }
+
+    @Test
+    public void testFromEnvServesWithDefaults() throws Exception {
+        IncrementCompanyBoycottHandler handler = new IncrementCompanyBoycottHandler(dynamoDb);
+        handler.setToggleRateLimiter(null);
+        handler.setMetricsOutput(null);
+        IncrementCompanyBoycottServer configured = IncrementCompanyBoycottServer.fromEnv(handler, 0);
+        configured.start();
+        try {
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(
+                            URI.create("http://127.0.0.1:" + configured.port() + "/companies/test-company/true"))
+                    .header(IncrementCompanyBoycottServer.DEFAULT_SUB_HEADER, "11111111-2222-3333-4444-555555555555")
+                    .POST(HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.ofString());
+
+            assertEquals(200, response.statusCode());
+            assertEquals(1, BoycottCountUpdater.countOf(dynamoDb.item(BoycottCountUpdater.TABLE_NAME,
+                    Map.of("company_id", AttributeValue.fromS("test-company")))));
+        } finally {
+            configured.stop(0);
+        }
+    }
+}
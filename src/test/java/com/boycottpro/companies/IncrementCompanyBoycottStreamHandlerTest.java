@@ -0,0 +1,164 @@
+package com.boycottpro.companies;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class IncrementCompanyBoycottStreamHandlerTest {
+
+    @Mock
+    private DynamoDbClient dynamoDbClient;
+
+    @Mock
+    private Context context;
+
+    private IncrementCompanyBoycottHandler handler;
+
+    private IncrementCompanyBoycottStreamHandler streamHandler;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeEach
+    public void setUp() {
+        handler = new IncrementCompanyBoycottHandler(dynamoDbClient);
+        handler.setMetricsOutput(null);
+        streamHandler = new IncrementCompanyBoycottStreamHandler(handler);
+    }
+
+    private JsonNode invoke(String payload) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        streamHandler.handleRequest(new ByteArrayInputStream(payload.getBytes(StandardCharsets.UTF_8)), output, context);
+        return objectMapper.readTree(output.toByteArray());
+    }
+
+    @Test
+    public void testRestApiV1Payload() throws Exception {
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+                .thenReturn(UpdateItemResponse.builder()
+                        .attributes(Map.of("boycott_count", AttributeValue.fromN("3")))
+                        .build());
+
+        JsonNode response = invoke("{\"resource\":\"/companies/{company_id}/{increment}\","
+                + "\"headers\":{\"Accept\":\"*/*\",\"User-Agent\":\"test\"},"
+                + "\"multiValueHeaders\":{\"Accept\":[\"*/*\"]},"
+                + "\"pathParameters\":{\"company_id\":\"test-company\",\"increment\":\"true\"},"
+                + "\"requestContext\":{\"stage\":\"dev\",\"identity\":{\"sourceIp\":\"1.2.3.4\"},"
+                + "\"authorizer\":{\"claims\":{\"sub\":\"11111111-2222-3333-4444-555555555555\",\"email\":\"a@b.c\"}}},"
+                + "\"body\":null,\"isBase64Encoded\":false}");
+
+        assertEquals(200, response.get("statusCode").asInt());
+        assertEquals("application/json", response.get("headers").get("Content-Type").asText());
+        JsonNode body = objectMapper.readTree(response.get("body").asText());
+        assertEquals(3, body.get("boycott_count").asInt());
+        ArgumentCaptor<UpdateItemRequest> captor = ArgumentCaptor.forClass(UpdateItemRequest.class);
+        verify(dynamoDbClient).updateItem(captor.capture());
+        assertEquals("test-company", captor.getValue().key().get("company_id").s());
+    }
+
+    @Test
+    public void testHttpApiV2Payload() throws Exception {
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+                .thenReturn(UpdateItemResponse.builder().build());
+
+        JsonNode response = invoke("{\"version\":\"2.0\",\"routeKey\":\"POST /companies/{company_id}/{increment}\","
+                + "\"cookies\":[\"a=b\"],\"headers\":{\"if-match\":\"0\"},"
+                + "\"pathParameters\":{\"company_id\":\"test-company\",\"increment\":\"false\"},"
+                + "\"requestContext\":{\"http\":{\"method\":\"POST\"},"
+                + "\"authorizer\":{\"jwt\":{\"claims\":{\"sub\":\"11111111-2222-3333-4444-555555555555\"},\"scopes\":null}}},"
+                + "\"isBase64Encoded\":false}");
+
+        assertEquals(200, response.get("statusCode").asInt());
+        ArgumentCaptor<UpdateItemRequest> captor = ArgumentCaptor.forClass(UpdateItemRequest.class);
+        verify(dynamoDbClient).updateItem(captor.capture());
+        assertEquals("-1", captor.getValue().expressionAttributeValues().get(":delta").n());
+        assertEquals("0", captor.getValue().expressionAttributeValues().get(":expected").n());
+    }
+
+    @Test
+    public void testBase64BulkBody() throws Exception {
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+                .thenReturn(UpdateItemResponse.builder().build());
+        String body = Base64.getEncoder().encodeToString(
+                "{\"items\":[{\"company_id\":\"a\",\"increment\":true}]}".getBytes(StandardCharsets.UTF_8));
+
+        JsonNode response = invoke("{\"version\":\"2.0\",\"requestContext\":{\"authorizer\":{\"jwt\":"
+                + "{\"claims\":{\"sub\":\"11111111-2222-3333-4444-555555555555\"}}}},"
+                + "\"body\":\"" + body + "\",\"isBase64Encoded\":true}");
+
+        assertEquals(200, response.get("statusCode").asInt());
+        assertTrue(response.get("body").asText().contains("\"results\""));
+    }
+
+    @Test
+    public void testMissingSubIsUnauthorized() throws Exception {
+        JsonNode response = invoke("{\"pathParameters\":{\"company_id\":\"test-company\",\"increment\":\"true\"}}");
+
+        assertEquals(401, response.get("statusCode").asInt());
+        verifyNoInteractions(dynamoDbClient);
+    }
+
+    private void enableFanOut() {
+        handler.setFanOut(new BoycottFanOut(dynamoDbClient,
+                new BoycottCountUpdater(dynamoDbClient, CompanyShardConfig.parse(""), "company_boycott_shards"),
+                List.of(new BoycottFanOut.Target("cause", "causes", "cause_id", "cause_id", "boycott_count"))));
+    }
+
+    private void assertFannedOutTo(String causeId) {
+        ArgumentCaptor<TransactWriteItemsRequest> captor = ArgumentCaptor.forClass(TransactWriteItemsRequest.class);
+        verify(dynamoDbClient).transactWriteItems(captor.capture());
+        List<TransactWriteItem> items = captor.getValue().transactItems();
+        assertEquals(2, items.size());
+        assertEquals("test-company", items.get(0).update().key().get("company_id").s());
+        assertEquals(causeId, items.get(1).update().key().get("cause_id").s());
+        verify(dynamoDbClient, never()).updateItem(any(UpdateItemRequest.class));
+    }
+
+    @Test
+    public void testRestApiV1FanOutQuery() throws Exception {
+        enableFanOut();
+
+        JsonNode response = invoke("{\"resource\":\"/companies/{company_id}/{increment}\","
+                + "\"pathParameters\":{\"company_id\":\"test-company\",\"increment\":\"true\"},"
+                + "\"queryStringParameters\":{\"fanout\":\"true\",\"cause_id\":\"cause-1\"},"
+                + "\"multiValueQueryStringParameters\":{\"fanout\":[\"true\"],\"cause_id\":[\"cause-1\"]},"
+                + "\"requestContext\":{\"authorizer\":{\"claims\":{\"sub\":\"user-1\"}}},"
+                + "\"body\":null,\"isBase64Encoded\":false}");
+
+        assertEquals(200, response.get("statusCode").asInt());
+        assertFannedOutTo("cause-1");
+    }
+
+    @Test
+    public void testHttpApiV2FanOutQuery() throws Exception {
+        enableFanOut();
+
+        JsonNode response = invoke("{\"version\":\"2.0\",\"routeKey\":\"POST /companies/{company_id}/{increment}\","
+                + "\"rawQueryString\":\"fanout=true&cause_id=cause-2\","
+                + "\"queryStringParameters\":{\"fanout\":\"true\",\"cause_id\":\"cause-2\"},"
+                + "\"pathParameters\":{\"company_id\":\"test-company\",\"increment\":\"true\"},"
+                + "\"requestContext\":{\"authorizer\":{\"jwt\":{\"claims\":{\"sub\":\"user-1\"}}}},"
+                + "\"isBase64Encoded\":false}");
+
+        assertEquals(200, response.get("statusCode").asInt());
+        assertFannedOutTo("cause-2");
+    }
+}
@@ -0,0 +1,82 @@
+package com.boycottpro.companies;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class InvocationMetricsTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testEmfDocumentDeclaresEveryMetric() throws Exception {
+        InvocationMetrics metrics = new InvocationMetrics(true);
+        metrics.endPhase("Auth");
+        metrics.conditionalCheckFailed();
+        metrics.consumedCapacity(1.0);
+        metrics.status(404);
+
+        JsonNode emf = objectMapper.readTree(metrics.toEmf(1700000000000L));
+
+        JsonNode directive = emf.get("_aws").get("CloudWatchMetrics").get(0);
+        assertEquals(1700000000000L, emf.get("_aws").get("Timestamp").asLong());
+        assertEquals(InvocationMetrics.NAMESPACE, directive.get("Namespace").asText());
+        assertEquals("FunctionName", directive.get("Dimensions").get(0).get(0).asText());
+        for (JsonNode metric : directive.get("Metrics")) {
+            assertTrue(emf.has(metric.get("Name").asText()), metric.get("Name").asText());
+        }
+        assertEquals(1, emf.get("ColdStart").asInt());
+        assertEquals(1, emf.get("Status404").asInt());
+        assertEquals(1, emf.get("ConditionalCheckFailed").asInt());
+        assertEquals(1.0, emf.get("ConsumedWriteCapacity").asDouble());
+        assertTrue(emf.get("AuthMs").asDouble() >= 0);
+        assertTrue(emf.has("TotalMs"));
+    }
+
+    @Test
+    public void testHandlerWritesOneEmfLinePerInvocation() throws Exception {
+        DynamoDbClient dynamoDbClient = mock(DynamoDbClient.class);
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+                .thenThrow(DynamoDbException.builder().message("Throughput exceeded")
+                        .statusCode(400)
+                        .awsErrorDetails(software.amazon.awssdk.awscore.exception.AwsErrorDetails.builder()
+                                .errorCode("ProvisionedThroughputExceededException").build())
+                        .build());
+        IncrementCompanyBoycottHandler handler = new IncrementCompanyBoycottHandler(dynamoDbClient);
+
+        APIGatewayProxyRequestEvent event = new APIGatewayProxyRequestEvent();
+        APIGatewayProxyRequestEvent.ProxyRequestContext rc = new APIGatewayProxyRequestEvent.ProxyRequestContext();
+        rc.setAuthorizer(Map.of("claims", Map.of("sub", "11111111-2222-3333-4444-555555555555")));
+        event.setRequestContext(rc);
+        event.setPathParameters(Map.of("company_id", "test-company", "increment", "true"));
+
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        handler.setMetricsOutput(new PrintStream(captured, true, StandardCharsets.UTF_8));
+
+        handler.handleRequest(event, null);
+
+        JsonNode emf = null;
+        for (String line : captured.toString(StandardCharsets.UTF_8).split("\\R")) {
+            if (line.startsWith("{\"_aws\"")) {
+                assertNull(emf, "expected a single EMF line");
+                emf = objectMapper.readTree(line);
+            }
+        }
+        assertNotNull(emf);
+        assertEquals(1, emf.get("Status500").asInt());
+        assertEquals(1, emf.get("Throttled").asInt());
+        assertTrue(emf.has("AuthMs"));
+        assertTrue(emf.has("ValidationMs"));
+    }
+}
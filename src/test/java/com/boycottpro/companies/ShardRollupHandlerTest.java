@@ -0,0 +1,56 @@
+package com.boycottpro.companies;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ShardRollupHandlerTest {
+
+    @Mock
+    private BoycottCountUpdater countUpdater;
+
+    @Test
+    public void testRollsUpAndPrunesEveryShardedCompany() {
+        when(countUpdater.getShardConfig()).thenReturn(new CompanyShardConfig(Map.of("a", 4, "b", 8, "idle", 2)));
+        when(countUpdater.rollup("a")).thenReturn(5L);
+        when(countUpdater.rollup("b")).thenReturn(-2L);
+        when(countUpdater.rollup("idle")).thenReturn(0L);
+
+        String result = new ShardRollupHandler(countUpdater).handleRequest(null, null);
+
+        assertEquals("rolled up = 2, failed = 0", result);
+        verify(countUpdater).pruneExpiredBuckets("a");
+        verify(countUpdater).pruneExpiredBuckets("b");
+        verify(countUpdater).pruneExpiredBuckets("idle");
+    }
+
+    @Test
+    public void testFailedCompanyDoesNotStopTheRest() {
+        when(countUpdater.getShardConfig()).thenReturn(new CompanyShardConfig(Map.of("broken", 4, "ok", 4)));
+        when(countUpdater.rollup("broken"))
+                .thenThrow(DynamoDbException.builder().message("Internal error").build());
+        when(countUpdater.rollup("ok")).thenReturn(3L);
+
+        String result = new ShardRollupHandler(countUpdater).handleRequest(null, null);
+
+        assertEquals("rolled up = 1, failed = 1", result);
+        verify(countUpdater, never()).pruneExpiredBuckets("broken");
+        verify(countUpdater).pruneExpiredBuckets("ok");
+    }
+
+    @Test
+    public void testNoShardedCompanies() {
+        when(countUpdater.getShardConfig()).thenReturn(CompanyShardConfig.parse(""));
+
+        assertEquals("rolled up = 0, failed = 0", new ShardRollupHandler(countUpdater).handleRequest(null, null));
+        verify(countUpdater, never()).rollup(anyString());
+    }
+}
@@ -0,0 +1,133 @@
+package com.boycottpro.companies;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ToggleRateLimiterTest {
+
+    private static final String SUB = "11111111-2222-3333-4444-555555555555";
+
+    @Mock
+    private DynamoDbClient dynamoDbClient;
+
+    private final AtomicLong now = new AtomicLong(0);
+
+    @Test
+    public void testBucketIsExhaustedAndRefilled() {
+        // 3 burst, one token every 2 seconds
+        ToggleRateLimiter limiter = new ToggleRateLimiter(3, 30, 100, dynamoDbClient, null, now::get);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.acquire(SUB, "test-company"));
+        }
+        assertEquals(2, limiter.acquire(SUB, "test-company"));
+        // other companies and other users have their own buckets
+        assertEquals(0, limiter.acquire(SUB, "other-company"));
+        assertEquals(0, limiter.acquire("other-user", "test-company"));
+
+        now.set(1500);
+        assertEquals(1, limiter.acquire(SUB, "test-company"));
+        now.set(2000);
+        assertEquals(0, limiter.acquire(SUB, "test-company"));
+        verifyNoInteractions(dynamoDbClient);
+    }
+
+    private static GetItemResponse sharedBucket(long tokens, long refilledAt) {
+        return GetItemResponse.builder().item(Map.of(
+                "limit_key", AttributeValue.fromS(SUB + "#test-company"),
+                "tokens", AttributeValue.fromN(Long.toString(tokens)),
+                "refilled_at", AttributeValue.fromN(Long.toString(refilledAt)))).build();
+    }
+
+    @Test
+    public void testSharedTierIsOnlyConsultedWhenLocalBucketIsLow() {
+        ToggleRateLimiter limiter = new ToggleRateLimiter(4, 30, 100, dynamoDbClient, "toggle_rate_limits", now::get);
+        when(dynamoDbClient.getItem(any(GetItemRequest.class))).thenReturn(GetItemResponse.builder().build());
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+                .thenReturn(UpdateItemResponse.builder().build());
+
+        assertEquals(0, limiter.acquire(SUB, "test-company"));
+        assertEquals(0, limiter.acquire(SUB, "test-company"));
+        verifyNoInteractions(dynamoDbClient);
+
+        now.set(1000);
+        assertEquals(0, limiter.acquire(SUB, "test-company"));
+        ArgumentCaptor<UpdateItemRequest> captor = ArgumentCaptor.forClass(UpdateItemRequest.class);
+        verify(dynamoDbClient).updateItem(captor.capture());
+        UpdateItemRequest request = captor.getValue();
+        assertEquals("toggle_rate_limits", request.tableName());
+        assertEquals(SUB + "#test-company", request.key().get("limit_key").s());
+        assertEquals("attribute_not_exists(tokens)", request.conditionExpression());
+        // a new shared bucket starts full and this toggle takes one token
+        assertEquals("180000", request.expressionAttributeValues().get(":tokens").n());
+        assertEquals("1000", request.expressionAttributeValues().get(":now").n());
+    }
+
+    @Test
+    public void testSharedBucketIsRefilledAndTakenConditionally() {
+        ToggleRateLimiter limiter = new ToggleRateLimiter(1, 30, 100, dynamoDbClient, "toggle_rate_limits", now::get);
+        now.set(10000);
+        when(dynamoDbClient.getItem(any(GetItemRequest.class))).thenReturn(sharedBucket(30000, 5000));
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+                .thenReturn(UpdateItemResponse.builder().build());
+
+        assertEquals(0, limiter.acquire(SUB, "test-company"));
+
+        ArgumentCaptor<UpdateItemRequest> captor = ArgumentCaptor.forClass(UpdateItemRequest.class);
+        verify(dynamoDbClient).updateItem(captor.capture());
+        UpdateItemRequest request = captor.getValue();
+        assertEquals("tokens = :seenTokens AND refilled_at = :seenAt", request.conditionExpression());
+        assertEquals("30000", request.expressionAttributeValues().get(":seenTokens").n());
+        // half a token plus 5 seconds of refill is capped at one, which this toggle takes
+        assertEquals("0", request.expressionAttributeValues().get(":tokens").n());
+    }
+
+    @Test
+    public void testEmptySharedBucketReturnsRetryAfter() {
+        ToggleRateLimiter limiter = new ToggleRateLimiter(1, 30, 100, dynamoDbClient, "toggle_rate_limits", now::get);
+        now.set(45000);
+        when(dynamoDbClient.getItem(any(GetItemRequest.class))).thenReturn(sharedBucket(0, 45000));
+
+        assertEquals(2, limiter.acquire(SUB, "test-company"));
+        verify(dynamoDbClient, never()).updateItem(any(UpdateItemRequest.class));
+    }
+
+    @Test
+    public void testConcurrentTakeIsRetriedAgainstWinnerState() {
+        ToggleRateLimiter limiter = new ToggleRateLimiter(1, 30, 100, dynamoDbClient, "toggle_rate_limits", now::get);
+        when(dynamoDbClient.getItem(any(GetItemRequest.class))).thenReturn(sharedBucket(60000, 0));
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+                .thenThrow(ConditionalCheckFailedException.builder().message("taken")
+                        .item(sharedBucket(0, 0).item()).build());
+
+        // the other instance spent the last token, so this toggle is refused
+        assertEquals(2, limiter.acquire(SUB, "test-company"));
+        verify(dynamoDbClient, times(1)).updateItem(any(UpdateItemRequest.class));
+    }
+
+    @Test
+    public void testSharedTierFailsOpen() {
+        ToggleRateLimiter limiter = new ToggleRateLimiter(1, 30, 100, dynamoDbClient, "toggle_rate_limits", now::get);
+        when(dynamoDbClient.getItem(any(GetItemRequest.class)))
+                .thenThrow(ProvisionedThroughputExceededException.builder().message("throttled").build());
+
+        assertEquals(0, limiter.acquire(SUB, "test-company"));
+    }
+}
@@ -0,0 +1,59 @@
+package com.boycottpro.companies;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UnknownCompanyCacheTest {
+
+    @Test
+    public void testEntriesExpireAfterTtl() {
+        AtomicLong now = new AtomicLong(1000);
+        UnknownCompanyCache cache = new UnknownCompanyCache(10, 500, now::get);
+
+        cache.recordMissing("gone");
+        assertTrue(cache.isKnownMissing("gone"));
+        assertFalse(cache.isKnownMissing("other"));
+
+        now.addAndGet(500);
+        assertFalse(cache.isKnownMissing("gone"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() {
+        UnknownCompanyCache cache = new UnknownCompanyCache(2, 60000, () -> 0L);
+
+        cache.recordMissing("a");
+        cache.recordMissing("b");
+        cache.isKnownMissing("a");
+        cache.recordMissing("c");
+
+        assertEquals(2, cache.size());
+        assertTrue(cache.isKnownMissing("a"));
+        assertFalse(cache.isKnownMissing("b"));
+        assertTrue(cache.isKnownMissing("c"));
+    }
+
+    @Test
+    public void testDisabledCacheNeverMatches() {
+        UnknownCompanyCache cache = new UnknownCompanyCache(0, 60000, () -> 0L);
+
+        cache.recordMissing("a");
+
+        assertFalse(cache.isKnownMissing("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testInvalidate() {
+        UnknownCompanyCache cache = new UnknownCompanyCache(10, 60000, () -> 0L);
+
+        cache.recordMissing("a");
+        cache.invalidate("a");
+
+        assertFalse(cache.isKnownMissing("a"));
+    }
+}
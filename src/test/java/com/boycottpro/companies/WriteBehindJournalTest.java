@@ -0,0 +1,152 @@
+package com.boycottpro.companies;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.core.exception.ApiCallAttemptTimeoutException;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class WriteBehindJournalTest {
+
+    @Mock
+    private DynamoDbClient dynamoDbClient;
+
+    static DynamoDbException throttle() {
+        return (DynamoDbException) DynamoDbException.builder()
+                .message("Throughput exceeded")
+                .statusCode(400)
+                .awsErrorDetails(AwsErrorDetails.builder().errorCode("ProvisionedThroughputExceededException").build())
+                .build();
+    }
+
+    private BoycottCountUpdater updater() {
+        return new BoycottCountUpdater(dynamoDbClient, CompanyShardConfig.parse(""), "company_boycott_shards");
+    }
+
+    @Test
+    public void testDisabledJournalRejects() {
+        WriteBehindJournal journal = new WriteBehindJournal(false, 10, null, null);
+
+        assertFalse(journal.append("a", 1));
+        assertFalse(journal.hasPending());
+    }
+
+    @Test
+    public void testDeltasAreNettedAndDrainedAfterBackoff() {
+        AtomicLong now = new AtomicLong(1000);
+        WriteBehindJournal journal = new WriteBehindJournal(true, 10, null, null, now::get);
+
+        assertTrue(journal.append("a", 1));
+        assertTrue(journal.append("a", 1));
+        assertTrue(journal.append("a", -1));
+        assertTrue(journal.append("a", 1));
+        assertEquals(2, journal.pendingDelta("a"));
+
+        assertEquals(0, journal.drain(updater()));
+        verifyNoInteractions(dynamoDbClient);
+
+        now.addAndGet(WriteBehindJournal.INITIAL_BACKOFF_MILLIS);
+        assertEquals(1, journal.drain(updater()));
+
+        ArgumentCaptor<UpdateItemRequest> captor = ArgumentCaptor.forClass(UpdateItemRequest.class);
+        verify(dynamoDbClient).updateItem(captor.capture());
+        assertEquals("2", captor.getValue().expressionAttributeValues().get(":delta").n());
+        assertFalse(journal.hasPending());
+    }
+
+    @Test
+    public void testThrottledDrainKeepsDeltaAndBacksOff() {
+        AtomicLong now = new AtomicLong(1000);
+        WriteBehindJournal journal = new WriteBehindJournal(true, 10, null, null, now::get);
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class))).thenThrow(throttle());
+
+        journal.append("a", 3);
+        now.addAndGet(WriteBehindJournal.INITIAL_BACKOFF_MILLIS);
+        assertEquals(0, journal.drain(updater()));
+        assertEquals(3, journal.pendingDelta("a"));
+
+        now.addAndGet(WriteBehindJournal.INITIAL_BACKOFF_MILLIS);
+        assertEquals(0, journal.drain(updater()));
+        verify(dynamoDbClient, times(1)).updateItem(any(UpdateItemRequest.class));
+    }
+
+    @Test
+    public void testClientTimeoutKeepsDelta() {
+        AtomicLong now = new AtomicLong(1000);
+        WriteBehindJournal journal = new WriteBehindJournal(true, 10, null, null, now::get);
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+                .thenThrow(ApiCallAttemptTimeoutException.builder().message("attempt timed out").build());
+
+        journal.append("a", 3);
+        now.addAndGet(WriteBehindJournal.INITIAL_BACKOFF_MILLIS);
+        assertEquals(0, journal.drain(updater()));
+        assertEquals(3, journal.pendingDelta("a"));
+    }
+
+    @Test
+    public void testRejectedDeltaIsDropped() {
+        AtomicLong now = new AtomicLong(1000);
+        WriteBehindJournal journal = new WriteBehindJournal(true, 10, null, null, now::get);
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class))).thenThrow(DynamoDbException.builder()
+                .message("Item size has exceeded the maximum allowed size")
+                .statusCode(400)
+                .awsErrorDetails(AwsErrorDetails.builder().errorCode("ValidationException").build())
+                .build());
+
+        journal.append("a", 3);
+        now.addAndGet(WriteBehindJournal.INITIAL_BACKOFF_MILLIS);
+        assertEquals(0, journal.drain(updater()));
+        assertFalse(journal.hasPending());
+    }
+
+    @Test
+    public void testEachDrainIsBounded() {
+        AtomicLong now = new AtomicLong(1000);
+        WriteBehindJournal journal = new WriteBehindJournal(true, 100, null, null, now::get);
+        for (int i = 0; i < WriteBehindJournal.MAX_DRAIN_WRITES + 5; i++) {
+            journal.append("company-" + i, 1);
+        }
+
+        now.addAndGet(WriteBehindJournal.INITIAL_BACKOFF_MILLIS);
+        assertEquals(WriteBehindJournal.MAX_DRAIN_WRITES, journal.drain(updater()));
+        assertTrue(journal.hasPending());
+        // no backoff after a budget stop
+        assertEquals(5, journal.drain(updater()));
+        assertFalse(journal.hasPending());
+    }
+
+    @Test
+    public void testJournalIsBounded() {
+        WriteBehindJournal journal = new WriteBehindJournal(true, 1, null, null, () -> 0L);
+
+        assertTrue(journal.append("a", 1));
+        assertTrue(journal.append("a", 1));
+        assertFalse(journal.append("b", 1));
+    }
+
+    @Test
+    public void testQueueModeSendsDelta() {
+        SqsClient sqs = mock(SqsClient.class);
+        WriteBehindJournal journal = new WriteBehindJournal(true, 10, "https://queue", sqs);
+
+        assertTrue(journal.append("a", -1));
+
+        ArgumentCaptor<SendMessageRequest> captor = ArgumentCaptor.forClass(SendMessageRequest.class);
+        verify(sqs).sendMessage(captor.capture());
+        assertEquals("https://queue", captor.getValue().queueUrl());
+        assertTrue(captor.getValue().messageBody().contains("\"delta\":-1"));
+        assertFalse(journal.hasPending());
+    }
+}
@@ -0,0 +1,129 @@
+package com.boycottpro.companies;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WriteCoalescerTest {
+
+    @Test
+    public void testConcurrentIncrementsAreMergedIntoOneWrite() throws Exception {
+        InMemoryDynamoDbClient dynamoDb = new InMemoryDynamoDbClient();
+        dynamoDb.putCompany("hot-company", 10);
+        BoycottCountUpdater updater = new BoycottCountUpdater(dynamoDb);
+        ExecutorService callers = Executors.newFixedThreadPool(16);
+        try (WriteCoalescer coalescer = new WriteCoalescer(updater, 50, Runnable::run)) {
+            List<Future<UpdateItemResponse>> results = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                int delta = i < 20 ? 1 : -1;
+                results.add(callers.submit(() -> coalescer.apply("hot-company", delta)));
+            }
+            for (Future<UpdateItemResponse> result : results) {
+                result.get();
+            }
+        } finally {
+            callers.shutdown();
+        }
+
+        assertEquals(20, BoycottCountUpdater.countOf(dynamoDb.item(BoycottCountUpdater.TABLE_NAME,
+                Map.of("company_id", AttributeValue.fromS("hot-company")))));
+        assertTrue(dynamoDb.updateCount() < 30, "writes = " + dynamoDb.updateCount());
+    }
+
+    @Test
+    public void testEveryCallerSeesMergedFailure() {
+        InMemoryDynamoDbClient dynamoDb = new InMemoryDynamoDbClient();
+        try (WriteCoalescer coalescer = new WriteCoalescer(new BoycottCountUpdater(dynamoDb), 50, Runnable::run)) {
+            CompletableFuture<UpdateItemResponse> first = coalescer.submit("missing-company", 1);
+            CompletableFuture<UpdateItemResponse> second = coalescer.submit("missing-company", -1);
+
+            CompletionException e = assertThrows(CompletionException.class, first::join);
+            assertInstanceOf(ConditionalCheckFailedException.class, e.getCause());
+            assertThrows(CompletionException.class, second::join);
+        }
+    }
+
+    @Test
+    public void testCompaniesAreWrittenSeparately() {
+        InMemoryDynamoDbClient dynamoDb = new InMemoryDynamoDbClient();
+        dynamoDb.putCompany("a", 0);
+        dynamoDb.putCompany("b", 0);
+        try (WriteCoalescer coalescer = new WriteCoalescer(new BoycottCountUpdater(dynamoDb), 20, Runnable::run)) {
+            CompletableFuture<UpdateItemResponse> a = coalescer.submit("a", 1);
+            CompletableFuture<UpdateItemResponse> b = coalescer.submit("b", -1);
+
+            assertEquals(1L, BoycottCountUpdater.updatedCount(a.join()));
+            assertEquals(-1L, BoycottCountUpdater.updatedCount(b.join()));
+        }
+        assertEquals(2, dynamoDb.updateCount());
+    }
+
+    @Test
+    public void testCloseFlushesOpenWindows() {
+        InMemoryDynamoDbClient dynamoDb = new InMemoryDynamoDbClient();
+        dynamoDb.putCompany("a", 0);
+        WriteCoalescer coalescer = new WriteCoalescer(new BoycottCountUpdater(dynamoDb), 60000, Runnable::run);
+        CompletableFuture<UpdateItemResponse> pending = coalescer.submit("a", 1);
+
+        coalescer.close();
+
+        assertTrue(pending.isDone());
+        assertEquals(1L, BoycottCountUpdater.updatedCount(pending.join()));
+    }
+
+    @Test
+    public void testSubmitAfterCloseFailsInsteadOfHanging() {
+        InMemoryDynamoDbClient dynamoDb = new InMemoryDynamoDbClient();
+        dynamoDb.putCompany("a", 0);
+        WriteCoalescer coalescer = new WriteCoalescer(new BoycottCountUpdater(dynamoDb), 20, Runnable::run);
+        coalescer.close();
+
+        CompletableFuture<UpdateItemResponse> late = coalescer.submit("a", 1);
+
+        assertTrue(late.isCompletedExceptionally());
+        CompletionException e = assertThrows(CompletionException.class, late::join);
+        assertInstanceOf(RejectedExecutionException.class, e.getCause());
+        // the failed window is gone, so the next submit does not join it
+        assertTrue(coalescer.submit("a", 1).isCompletedExceptionally());
+    }
+
+    @Test
+    public void testRejectedWriterFailsWaiters() throws Exception {
+        InMemoryDynamoDbClient dynamoDb = new InMemoryDynamoDbClient();
+        dynamoDb.putCompany("a", 0);
+        try (WriteCoalescer coalescer = new WriteCoalescer(new BoycottCountUpdater(dynamoDb), 1, runnable -> {
+            throw new RejectedExecutionException("writers saturated");
+        })) {
+            CompletableFuture<UpdateItemResponse> pending = coalescer.submit("a", 1);
+
+            CompletionException e = assertThrows(CompletionException.class, pending::join);
+            assertInstanceOf(RejectedExecutionException.class, e.getCause());
+        }
+        assertEquals(0, dynamoDb.updateCount());
+    }
+
+    @Test
+    public void testApplyTimesOut() {
+        InMemoryDynamoDbClient dynamoDb = new InMemoryDynamoDbClient();
+        dynamoDb.putCompany("a", 0);
+        // a writer pool that never runs the flush
+        try (WriteCoalescer coalescer = new WriteCoalescer(new BoycottCountUpdater(dynamoDb), 1, 20, runnable -> {
+        })) {
+            IllegalStateException e = assertThrows(IllegalStateException.class, () -> coalescer.apply("a", 1));
+            assertTrue(e.getMessage().contains("timed out"));
+        }
+    }
+}